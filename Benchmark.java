@@ -0,0 +1,1092 @@
+package mine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Simple wall-clock benchmarks for the module data structures.
+// Run: java mine.Benchmark <name>   (no name runs everything)
+public class Benchmark {
+
+    private static final PrintStream REAL_OUT = System.out;
+
+    public static void main(String[] args) {
+        String which = args.length > 0 ? args[0] : "all";
+
+        if (which.equals("all") || which.equals("students")) {
+            studentsBenchmark();
+        }
+        if (which.equals("all") || which.equals("marks")) {
+            marksBenchmark();
+        }
+        if (which.equals("all") || which.equals("report")) {
+            reportBenchmark();
+        }
+        if (which.equals("all") || which.equals("courses")) {
+            coursesBenchmark();
+        }
+        if (which.equals("all") || which.equals("matching")) {
+            matchingBenchmark();
+        }
+        if (which.equals("all") || which.equals("timetable")) {
+            timetableBenchmark();
+        }
+        if (which.equals("all") || which.equals("library")) {
+            libraryStress();
+        }
+        if (which.equals("all") || which.equals("overdue")) {
+            overdueBenchmark();
+        }
+        if (which.equals("all") || which.equals("persistence")) {
+            persistenceBenchmark();
+        }
+        if (which.equals("all") || which.equals("snapshot")) {
+            snapshotBenchmark();
+        }
+        if (which.equals("all") || which.equals("import")) {
+            importBenchmark();
+        }
+        if (which.equals("all") || which.equals("script")) {
+            scriptBenchmark();
+        }
+        if (which.equals("all") || which.equals("listing")) {
+            listingBenchmark();
+        }
+        if (which.equals("all") || which.equals("search")) {
+            searchBenchmark();
+        }
+        if (which.equals("all") || which.equals("catalogue")) {
+            catalogueBenchmark();
+        }
+    }
+
+    //  Student registry: old linked list walk vs indexed registry
+    private static void studentsBenchmark() {
+        REAL_OUT.println("\nSTUDENT REGISTRY (add all, search all, delete all)");
+        int[] sizes = {10_000, 100_000, 1_000_000};
+        for (int n : sizes) {
+            String[] ids = makeIds(n);
+
+            String before;
+            if (n <= 100_000) {
+                long t0 = System.nanoTime();
+                LegacyStudentList legacy = new LegacyStudentList();
+                for (String id : ids) legacy.add(id, "Name " + id, 1000);
+                for (String id : ids) legacy.contains(id);
+                for (String id : ids) legacy.delete(id);
+                before = millis(t0) + " ms";
+            } else {
+                before = "skipped (quadratic)";
+            }
+
+            quiet();
+            long t1 = System.nanoTime();
+            students registry = new students();
+            for (String id : ids) registry.addStudent(id, "Name " + id, 1000);
+            for (String id : ids) registry.searchStudent(id);
+            for (String id : ids) registry.deleteStudent(id);
+            long after = millis(t1);
+            loud();
+
+            REAL_OUT.println(String.format("n=%,d | before: %s | after: %d ms", n, before, after));
+        }
+    }
+
+    // Copy of the original singly linked list (tail walk on every add)
+    private static class LegacyStudentList {
+        private static class Node {
+            String id;
+            String name;
+            double amountPaid;
+            Node next;
+
+            Node(String id, String name, double amountPaid) {
+                this.id = id;
+                this.name = name;
+                this.amountPaid = amountPaid;
+            }
+        }
+
+        private Node head;
+
+        void add(String id, String name, double amount) {
+            Node newNode = new Node(id, name, amount);
+            if (head == null) {
+                head = newNode;
+                return;
+            }
+            Node cur = head;
+            while (cur.next != null) cur = cur.next;
+            cur.next = newNode;
+        }
+
+        boolean contains(String id) {
+            for (Node cur = head; cur != null; cur = cur.next) {
+                if (cur.id.equals(id)) return true;
+            }
+            return false;
+        }
+
+        void delete(String id) {
+            if (head == null) return;
+            if (head.id.equals(id)) {
+                head = head.next;
+                return;
+            }
+            Node cur = head;
+            while (cur.next != null && !cur.next.id.equals(id)) cur = cur.next;
+            if (cur.next != null) cur.next = cur.next.next;
+        }
+    }
+
+    //  Marks: map of small arrays vs columnar store, 1M students x 5 subjects
+    private static void marksBenchmark() {
+        REAL_OUT.println("\nMARKS STORAGE (1,000,000 students, 5 subjects)");
+        int n = 1_000_000;
+        int subjects = 5;
+        String[] ids = makeIds(n);
+        Random random = new Random(42);
+        double[] marks = new double[subjects];
+
+        long base = usedHeap();
+        Map<String, double[]> legacy = new LinkedHashMap<>();
+        for (String id : ids) {
+            double[] row = new double[subjects];
+            for (int s = 0; s < subjects; s++) row[s] = random.nextInt(101);
+            legacy.put(id, row);
+        }
+        long legacyBytes = usedHeap() - base;
+
+        base = usedHeap();
+        MarksStore store = new MarksStore(subjects);
+        for (String id : ids) {
+            for (int s = 0; s < subjects; s++) marks[s] = random.nextInt(101);
+            store.put(id, marks);
+        }
+        long storeBytes = usedHeap() - base;
+
+        // Report pass: class average, per-subject means and grade counts
+        double sink = 0;
+        long legacyTime = Long.MAX_VALUE;
+        long storeTime = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            double classTotal = 0;
+            double[] subjectSums = new double[subjects];
+            int[] grades = new int[5];
+            for (double[] row : legacy.values()) {
+                double avg = Arrays.stream(row).average().orElse(0);
+                classTotal += avg;
+                for (int s = 0; s < subjects; s++) subjectSums[s] += row[s];
+                grades[avg >= 70 ? 0 : avg >= 60 ? 1 : avg >= 50 ? 2 : avg >= 40 ? 3 : 4]++;
+            }
+            sink += classTotal + subjectSums[0] + grades[0];
+            legacyTime = Math.min(legacyTime, System.nanoTime() - t0);
+
+            t0 = System.nanoTime();
+            classTotal = 0;
+            grades = new int[5];
+            double[] totals = store.totals();
+            for (int row = 0; row < n; row++) {
+                double avg = totals[row] / subjects;
+                classTotal += avg;
+                grades[avg >= 70 ? 0 : avg >= 60 ? 1 : avg >= 50 ? 2 : avg >= 40 ? 3 : 4]++;
+            }
+            for (int s = 0; s < subjects; s++) {
+                double[] column = store.column(s);
+                double sum = 0;
+                for (int row = 0; row < n; row++) sum += column[row];
+                subjectSums[s] = sum;
+            }
+            sink += classTotal + subjectSums[0] + grades[0];
+            storeTime = Math.min(storeTime, System.nanoTime() - t0);
+        }
+
+        REAL_OUT.println(String.format("map of arrays: %,d KB | report pass %d ms", legacyBytes / 1024, legacyTime / 1_000_000));
+        REAL_OUT.println(String.format("columnar:      %,d KB | report pass %d ms", storeBytes / 1024, storeTime / 1_000_000));
+        if (sink == 42) REAL_OUT.println(); // keep the loops from being optimised away
+    }
+
+    //  Performance report: sequential vs fork-join at several pool sizes
+    private static void reportBenchmark() {
+        int n = 4_000_000;
+        int subjects = 5;
+        REAL_OUT.println(String.format("\nPERFORMANCE REPORT ENGINE (%,d students, %d subjects)", n, subjects));
+        MarksStore store = new MarksStore(subjects, n);
+        Random random = new Random(7);
+        double[] marks = new double[subjects];
+        for (int i = 0; i < n; i++) {
+            for (int s = 0; s < subjects; s++) marks[s] = random.nextInt(1001) / 10.0;
+            store.put("S" + i, marks);
+        }
+
+        ReportEngine.Result sequential = ReportEngine.compute(store, null);
+        long seqTime = bestOf(5, () -> ReportEngine.compute(store, null));
+        REAL_OUT.println(String.format("sequential      : %d ms", seqTime / 1_000_000));
+
+        // Pool sizes beyond the core count still check determinism, just without speedup
+        int cores = Runtime.getRuntime().availableProcessors();
+        REAL_OUT.println("available cores: " + cores);
+        for (int p = 1; p <= Math.max(cores, 8); p *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(p);
+            ReportEngine.Result parallel = ReportEngine.compute(store, pool);
+            long time = bestOf(5, () -> ReportEngine.compute(store, pool));
+            pool.shutdown();
+            REAL_OUT.println(String.format("fork-join p=%-3d : %d ms | speedup %.2fx | identical: %s",
+                p, time / 1_000_000, (double) seqTime / time, sameReport(sequential, parallel)));
+        }
+    }
+
+    private static boolean sameReport(ReportEngine.Result a, ReportEngine.Result b) {
+        return a.count == b.count && a.classAverage == b.classAverage
+            && Arrays.equals(a.subjectMean, b.subjectMean) && Arrays.equals(a.subjectVariance, b.subjectVariance)
+            && Arrays.equals(a.subjectMin, b.subjectMin) && Arrays.equals(a.subjectMax, b.subjectMax)
+            && Arrays.equals(a.gradeCounts, b.gradeCounts) && a.passed == b.passed && a.failed == b.failed;
+    }
+
+    //  Course seats: circular scan over all courses vs the free-slot allocator
+    private static void coursesBenchmark() {
+        int courses = 5_000;
+        int n = 1_000_000;
+        REAL_OUT.println(String.format("\nCOURSE ASSIGNMENT (%,d courses, %,d students)", courses, n));
+
+        // Uneven capacities, ~700k seats in total, so the tail end of the intake finds most courses full
+        Random random = new Random(11);
+        int[] capacities = new int[courses];
+        for (int c = 0; c < courses; c++) capacities[c] = random.nextInt(2) == 0 ? 1 + random.nextInt(20) : 200 + random.nextInt(140);
+
+        long t0 = System.nanoTime();
+        int[] size = new int[courses];
+        int courseIndex = 0;
+        int legacyAssigned = 0;
+        for (int i = 0; i < n; i++) {
+            int start = courseIndex;
+            do {
+                boolean free = size[courseIndex] < capacities[courseIndex];
+                if (free) size[courseIndex]++;
+                courseIndex = (courseIndex + 1) % courses;
+                if (free) {
+                    legacyAssigned++;
+                    break;
+                }
+            } while (courseIndex != start);
+        }
+        long legacyTime = millis(t0);
+
+        t0 = System.nanoTime();
+        SeatAllocator seats = new SeatAllocator(capacities);
+        int assigned = 0;
+        for (int i = 0; i < n; i++) {
+            if (seats.allocate() >= 0) assigned++;
+        }
+        long allocatorTime = millis(t0);
+
+        // Incremental: free 1% of seats, then place 10k newcomers without touching the rest
+        for (int c = 0; c < courses; c += 100) seats.release(c);
+        t0 = System.nanoTime();
+        int placed = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (seats.allocate() >= 0) placed++;
+        }
+        long incrementalMicros = (System.nanoTime() - t0) / 1000;
+
+        REAL_OUT.println(String.format("circular scan : %d ms (%,d assigned)", legacyTime, legacyAssigned));
+        REAL_OUT.println(String.format("allocator     : %d ms (%,d assigned)", allocatorTime, assigned));
+        REAL_OUT.println(String.format("incremental   : %d us for 10,000 newcomers (%,d placed)", incrementalMicros, placed));
+    }
+
+    //  Preference matching: deferred acceptance over a full intake
+    private static void matchingBenchmark() {
+        int courses = 2_000;
+        int n = 1_000_000;
+        REAL_OUT.println(String.format("\nPREFERENCE MATCHING (%,d courses, %,d students, 5 choices each)", courses, n));
+
+        Random random = new Random(13);
+        int[] capacity = new int[courses];
+        for (int c = 0; c < courses; c++) capacity[c] = 300 + random.nextInt(500);
+
+        // Skewed popularity: low course numbers are requested far more often
+        int[][] prefs = new int[n][];
+        int[] priority = new int[n];
+        for (int s = 0; s < n; s++) {
+            int[] ranked = new int[5];
+            for (int k = 0; k < 5; k++) {
+                double u = random.nextDouble();
+                ranked[k] = (int) (u * u * courses);
+            }
+            prefs[s] = ranked;
+            priority[s] = random.nextInt(4);
+        }
+
+        long t0 = System.nanoTime();
+        CourseMatcher.Result result = CourseMatcher.match(capacity, prefs, priority);
+        REAL_OUT.println(String.format("deferred acceptance: %d ms | matched %,d | unmatched %,d",
+            millis(t0), result.matched, result.unmatched));
+    }
+
+    //  Timetable: conflict graph + greedy slot colouring
+    private static void timetableBenchmark() {
+        int courses = 3_000;
+        int n = 200_000;
+        REAL_OUT.println(String.format("\nTIMETABLE (%,d courses, %,d students, 4-6 courses each)", courses, n));
+
+        // Students pick from a block of 15 related courses (a programme), like real course loads
+        Random random = new Random(17);
+        int[] sessions = new int[courses];
+        for (int c = 0; c < courses; c++) sessions[c] = 1 + random.nextInt(3);
+        Timetable timetable = new Timetable(sessions);
+
+        long t0 = System.nanoTime();
+        for (int s = 0; s < n; s++) {
+            int programme = random.nextInt(courses / 15) * 15;
+            int k = 4 + random.nextInt(3);
+            int[] load = new int[k];
+            for (int i = 0; i < k; i++) load[i] = programme + random.nextInt(15);
+            timetable.addStudentLoad(load);
+        }
+        long graphTime = millis(t0);
+
+        t0 = System.nanoTime();
+        long clashes = timetable.schedule();
+        long scheduleTime = millis(t0);
+
+        REAL_OUT.println(String.format("conflict graph: %d ms | scheduling: %d ms | clashes left: %,d (%,d students)",
+            graphTime, scheduleTime, clashes, timetable.studentsWithClashes()));
+    }
+
+    //  Library: many desks hammering the same ISBN must never issue it twice
+    private static void libraryStress() {
+        int threads = 8;
+        int rounds = 200_000;
+        REAL_OUT.println(String.format("\nLIBRARY STRESS (%d threads x %,d borrow attempts)", threads, rounds));
+
+        quiet();
+        students registry = new students();
+        for (int t = 0; t < threads; t++) registry.addStudent("DESK" + t, "Desk " + t, 0);
+        Library library = new Library(registry);
+        loud();
+
+        String[] isbns = {"9780134685991", "9780596009205", "9780132350884", "9780134494166"};
+        int[] copies = {3, 2, 1, 1};
+        quiet();
+        for (int i = 0; i < isbns.length; i++) {
+            if (copies[i] > 1) library.addCopies(isbns[i], copies[i] - 1);
+        }
+        loud();
+        AtomicInteger[] holders = new AtomicInteger[isbns.length];
+        for (int i = 0; i < isbns.length; i++) holders[i] = new AtomicInteger();
+        AtomicInteger doubleIssues = new AtomicInteger();
+        AtomicInteger successes = new AtomicInteger();
+        AtomicReference<Throwable> crash = new AtomicReference<>();
+
+        quiet();
+        long t0 = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            String student = "DESK" + t;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Random random = new Random();
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        int b = random.nextInt(isbns.length);
+                        if (library.borrowBook(student, isbns[b])) {
+                            // While we hold a copy, no more than the copy count may be out
+                            if (holders[b].incrementAndGet() > copies[b]) doubleIssues.incrementAndGet();
+                            successes.incrementAndGet();
+                            holders[b].decrementAndGet();
+                            library.returnBook(student, isbns[b]);
+                        }
+                    }
+                } catch (RuntimeException | Error e) {
+                    crash.compareAndSet(null, e);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        boolean finished;
+        try {
+            finished = pool.awaitTermination(10, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finished = false;
+        }
+        long time = millis(t0);
+        loud();
+
+        REAL_OUT.println(String.format("%,d successful borrows in %d ms | over-issued copies: %d%s",
+            successes.get(), time, doubleIssues.get(), doubleIssues.get() == 0 ? " (OK)" : " (FAILED)"));
+        // A broken invariant fails the whole run (non-zero exit), not just this line
+        if (crash.get() != null) throw new AssertionError("library stress worker failed", crash.get());
+        if (!finished) throw new AssertionError("library stress did not finish within 10 minutes");
+        if (doubleIssues.get() != 0) throw new AssertionError(doubleIssues.get() + " copies issued beyond the copy count");
+        if (library.borrowedCount() != 0) throw new AssertionError(library.borrowedCount() + " books still out after every return");
+    }
+
+    //  Overdue detection: scan every active loan each hour vs hashed timing wheel
+    private static void overdueBenchmark() {
+        int loans = 1_000_000;
+        long hour = 60L * 60 * 1000;
+        int hours = 21 * 24;
+        REAL_OUT.println(String.format("\nOVERDUE CHECKS (%,d active loans, hourly checks over %d days)", loans, hours / 24));
+
+        // Loans taken at random times over two weeks, each due 14 days later
+        Random random = new Random(20);
+        long start = 1_700_000_000_000L;
+        long[] due = new long[loans];
+        for (int i = 0; i < loans; i++) due[i] = start + (long) (random.nextDouble() * 14 * 24 * hour) + 14 * 24 * hour;
+
+        boolean[] flagged = new boolean[loans];
+        long t0 = System.nanoTime();
+        long scanned = 0;
+        int scanFound = 0;
+        for (int h = 1; h <= hours; h++) {
+            long now = start + h * hour;
+            for (int i = 0; i < loans; i++) {
+                if (!flagged[i] && due[i] <= now) {
+                    flagged[i] = true;
+                    scanFound++;
+                }
+            }
+            scanned += loans;
+        }
+        long scanTime = millis(t0);
+
+        TimingWheel wheel = new TimingWheel(hour, 512, start);
+        TimingWheel.Entry[] entries = new TimingWheel.Entry[loans];
+        for (int i = 0; i < loans; i++) {
+            entries[i] = new TimingWheel.Entry();
+            wheel.schedule(entries[i], due[i]);
+        }
+        t0 = System.nanoTime();
+        int wheelFound = 0;
+        for (int h = 1; h <= hours; h++) wheelFound += wheel.advance(start + h * hour).size();
+        long wheelTime = millis(t0);
+
+        REAL_OUT.println(String.format("full scan:    %6d ms (%,d loans visited, %,d overdue)", scanTime, scanned, scanFound));
+        REAL_OUT.println(String.format("timing wheel: %6d ms (%,d overdue)%s", wheelTime, wheelFound,
+            wheelFound == scanFound ? "" : " MISMATCH"));
+    }
+
+    //  Durability: log throughput per commit mode, then recovery of a large state
+    private static void persistenceBenchmark() {
+        REAL_OUT.println("\nPERSISTENCE (write-ahead log + snapshots)");
+        try {
+            // Raw log throughput: one fsync per change vs group commit vs background sync
+            int threads = 8;
+            int perThread = 2_000;
+            for (String mode : new String[]{"sync, 1 thread", "sync, 8 threads", "async, 8 threads"}) {
+                Path dir = Files.createTempDirectory("wal");
+                boolean sync = mode.startsWith("sync");
+                int writers = mode.contains("8") ? threads : 1;
+                WriteAheadLog wal = new WriteAheadLog(dir, 0, sync, 5);
+                long t0 = System.nanoTime();
+                Thread[] workers = new Thread[writers];
+                for (int t = 0; t < writers; t++) {
+                    int id = t;
+                    workers[t] = new Thread(() -> {
+                        for (int i = 0; i < perThread; i++) {
+                            wal.append("student", "paid", "S" + (100000 + id * perThread + i), Double.toString(i));
+                        }
+                    });
+                    workers[t].start();
+                }
+                for (Thread w : workers) w.join();
+                wal.close();
+                long nanos = System.nanoTime() - t0;
+                long records = (long) writers * perThread;
+                REAL_OUT.println(String.format("%-17s %,9.0f changes/s | %,6d fsyncs for %,d changes | %.3f ms per change",
+                    mode + ":", records * 1e9 / nanos, wal.syncCount(), records, nanos / 1e6 / records * writers));
+                deleteTree(dir);
+            }
+
+            // Recovery: large snapshot + log tail, through the real modules
+            int n = 1_000_000;
+            int tail = 200_000;
+            Path dir = Files.createTempDirectory("school");
+            quiet();
+            students registry = new students();
+            Courses courses = new Courses(registry);
+            Performance performance = new Performance(registry);
+            Persistence persistence = new Persistence(dir, false, registry, courses, performance, null);
+            persistence.recover();
+            String[] ids = makeIds(n);
+            Random random = new Random(21);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                registry.addStudent(ids[i], "Student " + i, random.nextInt(5000));
+                performance.recordMarks(ids[i], new double[]{random.nextInt(101), random.nextInt(101),
+                    random.nextInt(101), random.nextInt(101), random.nextInt(101)});
+            }
+            long loadMillis = millis(t0);
+            t0 = System.nanoTime();
+            persistence.checkpoint();
+            long checkpointMillis = millis(t0);
+            for (int i = 0; i < tail; i++) registry.recordPayment(ids[random.nextInt(n)], 100);
+            persistence.syncCount(); // crash here: the tail is only in the log
+            loud();
+            REAL_OUT.println(String.format("logged %,d students + marks in %d ms; snapshot in %d ms (%.1f MB)",
+                n, loadMillis, checkpointMillis, dirSize(dir) / (1024.0 * 1024.0)));
+
+            Thread.sleep(50); // let the background sync catch up, as after a crash
+            quiet();
+            students recovered = new students();
+            Courses recoveredCourses = new Courses(recovered);
+            Performance recoveredPerformance = new Performance(recovered);
+            Persistence reopened = new Persistence(dir, false, recovered, recoveredCourses, recoveredPerformance, null);
+            t0 = System.nanoTime();
+            loud();
+            reopened.recover();
+            long recoverMillis = millis(t0);
+            REAL_OUT.println(String.format("recovery: %,d students back in %d ms (snapshot + %,d-change log tail)",
+                recovered.size(), recoverMillis, tail));
+            reopened.close();
+            deleteTree(dir);
+        } catch (IOException | InterruptedException e) {
+            loud();
+            REAL_OUT.println("Persistence benchmark failed: " + e);
+        }
+    }
+
+    //  Cold start: reload from CSV exports (one addStudent per row) vs the binary snapshot
+    private static void snapshotBenchmark() {
+        int n = 1_000_000;
+        int books = 100_000;
+        REAL_OUT.println(String.format("\nSNAPSHOT RESTORE (%,d students with marks, %,d loans)", n, books));
+        try {
+            Path dir = Files.createTempDirectory("snapshot");
+            Path catalogue = dir.resolve("catalogue.tsv");
+            Path studentCsv = dir.resolve("students.csv");
+            Path marksCsv = dir.resolve("marks.csv");
+            Path loansCsv = dir.resolve("loans.csv");
+            Path data = dir.resolve("data");
+            try (BufferedWriter out = Files.newBufferedWriter(catalogue, StandardCharsets.UTF_8)) {
+                for (int b = 0; b < books; b++) out.write((9780000000000L + b) + "\tTitle " + b + "\tAuthor " + (b % 997) + "\n");
+            }
+
+            // Source state, exported both ways
+            quiet();
+            String[] ids = makeIds(n);
+            Random random = new Random(22);
+            students registry = new students();
+            new fees(registry);
+            Performance performance = new Performance(registry);
+            Library library = new Library(registry, catalogue.toString());
+            try (BufferedWriter studentOut = Files.newBufferedWriter(studentCsv, StandardCharsets.UTF_8);
+                 BufferedWriter marksOut = Files.newBufferedWriter(marksCsv, StandardCharsets.UTF_8)) {
+                double[] marks = new double[5];
+                for (int i = 0; i < n; i++) {
+                    double paid = random.nextInt(80_000);
+                    registry.addStudent(ids[i], "Student " + i, paid);
+                    studentOut.write(ids[i] + "," + "Student " + i + "," + paid + "\n");
+                    StringBuilder row = new StringBuilder(ids[i]);
+                    for (int s = 0; s < marks.length; s++) {
+                        marks[s] = random.nextInt(1001) / 10.0;
+                        row.append(',').append(marks[s]);
+                    }
+                    performance.recordMarks(ids[i], marks);
+                    marksOut.write(row.append('\n').toString());
+                }
+            }
+            for (int b = 0; b < books; b++) library.borrowBook(ids[random.nextInt(n)], Long.toString(9780000000000L + b));
+            try (BufferedWriter loansOut = Files.newBufferedWriter(loansCsv, StandardCharsets.UTF_8)) {
+                for (String id : ids) {
+                    for (String isbn : library.getLoans(id)) loansOut.write(isbn + "," + id + "\n");
+                }
+            }
+            Persistence persistence = new Persistence(data, false, registry, null, performance, library);
+            persistence.recover();
+            long t0 = System.nanoTime();
+            persistence.checkpoint();
+            long writeMillis = millis(t0);
+            persistence.close();
+            List<String> expectedTop = performance.topStudents(20);
+            int expectedBorrowed = library.borrowedCount();
+            registry = null;
+            performance = null;
+            library = null;
+            persistence = null;
+            loud();
+            long csvBytes = Files.size(studentCsv) + Files.size(marksCsv) + Files.size(loansCsv);
+            REAL_OUT.println(String.format("CSV export %.1f MB | binary snapshot %.1f MB, written in %d ms",
+                csvBytes / (1024.0 * 1024.0), dirSize(data) / (1024.0 * 1024.0), writeMillis));
+
+            // CSV reload through the public API (catalogue load not timed)
+            usedHeap();
+            quiet();
+            students csvRegistry = new students();
+            fees csvFees = new fees(csvRegistry);
+            Performance csvPerformance = new Performance(csvRegistry);
+            Library csvLibrary = new Library(csvRegistry, catalogue.toString());
+            t0 = System.nanoTime();
+            try (BufferedReader in = Files.newBufferedReader(studentCsv, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] f = line.split(",");
+                    csvRegistry.addStudent(f[0], f[1], Double.parseDouble(f[2]));
+                }
+            }
+            try (BufferedReader in = Files.newBufferedReader(marksCsv, StandardCharsets.UTF_8)) {
+                String line;
+                double[] marks = new double[5];
+                while ((line = in.readLine()) != null) {
+                    String[] f = line.split(",");
+                    for (int s = 0; s < marks.length; s++) marks[s] = Double.parseDouble(f[1 + s]);
+                    csvPerformance.recordMarks(f[0], marks);
+                }
+            }
+            try (BufferedReader in = Files.newBufferedReader(loansCsv, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] f = line.split(",");
+                    csvLibrary.borrowBook(f[1], f[0]);
+                }
+            }
+            long csvMillis = millis(t0);
+            boolean csvOk = csvRegistry.size() == n && csvFees.checkConsistency()
+                && csvPerformance.topStudents(20).equals(expectedTop) && csvLibrary.borrowedCount() == expectedBorrowed;
+            csvRegistry = null;
+            csvFees = null;
+            csvPerformance = null;
+            csvLibrary = null;
+            loud();
+            REAL_OUT.println(String.format("CSV reload (addStudent/recordMarks/borrowBook): %6d ms  state matches: %s",
+                csvMillis, csvOk));
+
+            // Snapshot: map, verify, bulk-build
+            usedHeap();
+            Path snapshotFile;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(data, "*.snap")) {
+                snapshotFile = files.iterator().next();
+            }
+            t0 = System.nanoTime();
+            SnapshotFile.read(snapshotFile);
+            long decodeMillis = millis(t0);
+            usedHeap();
+            quiet();
+            students binRegistry = new students();
+            fees binFees = new fees(binRegistry);
+            Performance binPerformance = new Performance(binRegistry);
+            Library binLibrary = new Library(binRegistry, catalogue.toString());
+            Persistence reopened = new Persistence(data, false, binRegistry, null, binPerformance, binLibrary);
+            t0 = System.nanoTime();
+            reopened.recover();
+            long binMillis = millis(t0);
+            boolean binOk = binRegistry.size() == n && binFees.checkConsistency()
+                && binPerformance.topStudents(20).equals(expectedTop) && binLibrary.borrowedCount() == expectedBorrowed;
+            loud();
+            REAL_OUT.println(String.format("binary snapshot (map + checksum + bulk build):  %6d ms  state matches: %s",
+                binMillis, binOk));
+            REAL_OUT.println(String.format("  of which map, verify and decode: %d ms", decodeMillis));
+            reopened.close();
+            deleteTree(data);
+            deleteTree(dir);
+        } catch (IOException e) {
+            loud();
+            REAL_OUT.println("Snapshot benchmark failed: " + e);
+        }
+    }
+
+    //  Bulk import: addStudent per line vs the streaming pipeline (1% bad rows, 1% duplicates)
+    private static void importBenchmark() {
+        REAL_OUT.println("\nSTUDENT IMPORT (CSV id,name,amountPaid)");
+        try {
+            for (int n : new int[]{1_000_000, 50_000}) {
+                boolean durable = n < 1_000_000; // with a synchronous change log attached
+                Path file = Files.createTempFile("students", ".csv");
+                Random random = new Random(23);
+                try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    out.write("id,name,amountPaid\n");
+                    for (int i = 0; i < n; i++) {
+                        int roll = random.nextInt(100);
+                        if (roll == 0) out.write("S" + (100000 + random.nextInt(Math.max(1, i))) + ",Again,10\n");
+                        else if (roll == 1) out.write("S" + (100000 + i) + ",Broken,ten\n");
+                        else out.write("S" + (100000 + i) + ",Student " + i + "," + random.nextInt(80_000) + "\n");
+                    }
+                }
+
+                String label = String.format("%,d rows%s", n, durable ? ", sync change log" : "");
+                for (boolean pipeline : new boolean[]{false, true}) {
+                    Path dir = Files.createTempDirectory("import");
+                    quiet();
+                    students registry = new students();
+                    fees feeModule = new fees(registry);
+                    Persistence persistence = null;
+                    if (durable) {
+                        persistence = new Persistence(dir, true, registry, null, null, null);
+                        persistence.recover();
+                    }
+                    long t0 = System.nanoTime();
+                    String detail;
+                    if (pipeline) {
+                        StudentImport.Result r = StudentImport.run(registry, file, null);
+                        detail = String.format("%,d imported, %,d duplicates, %,d invalid", r.imported, r.duplicates, r.invalid);
+                    } else {
+                        int bad = 0;
+                        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                            in.readLine();
+                            String line;
+                            while ((line = in.readLine()) != null) {
+                                String[] f = line.split(",");
+                                try {
+                                    registry.addStudent(f[0], f[1], Double.parseDouble(f[2]));
+                                } catch (NumberFormatException e) {
+                                    bad++;
+                                }
+                            }
+                        }
+                        detail = String.format("%,d registered, %,d bad", registry.size(), bad);
+                    }
+                    long elapsed = Math.max(1, millis(t0));
+                    boolean consistent = feeModule.checkConsistency();
+                    long fsyncs = persistence == null ? 0 : persistence.syncCount();
+                    if (persistence != null) persistence.close();
+                    deleteTree(dir);
+                    loud();
+                    REAL_OUT.println(String.format("%-31s %-22s %6d ms %,10.0f rows/s%s | %s, fees consistent: %s",
+                        label + ":", pipeline ? "pipeline" : "addStudent per line", elapsed, n * 1000.0 / elapsed,
+                        durable ? String.format(" %,7d fsyncs", fsyncs) : "", detail, consistent));
+                }
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            loud();
+            REAL_OUT.println("Import benchmark failed: " + e);
+        }
+    }
+
+    //  The same work keyed into the menus vs a headless script (adds, payments, marks)
+    private static void scriptBenchmark() {
+        int n = 100_000;
+        REAL_OUT.println(String.format("\nSCRIPT MODE (%,d adds + %,d payments + %,d mark entries, output to /dev/null)", n, n, n));
+        String[] ids = makeIds(n);
+        StringBuilder studentKeys = new StringBuilder();
+        StringBuilder feeKeys = new StringBuilder();
+        StringBuilder markKeys = new StringBuilder();
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            studentKeys.append("1\n").append(ids[i]).append("\nStudent ").append(i).append('\n').append(i % 70_000).append('\n');
+            script.append("student add ").append(ids[i]).append(" \"Student ").append(i).append("\" ").append(i % 70_000).append('\n');
+        }
+        for (int i = 0; i < n; i++) {
+            feeKeys.append("3\n").append(ids[i]).append("\n100\n");
+            script.append("fees pay ").append(ids[i]).append(" 100\n");
+        }
+        for (int i = 0; i < n; i++) {
+            markKeys.append("1\n").append(ids[i]).append('\n');
+            script.append("marks set ").append(ids[i]);
+            for (int s = 0; s < 5; s++) {
+                markKeys.append((i + s * 7) % 101).append('\n');
+                script.append(' ').append((i + s * 7) % 101);
+            }
+            script.append('\n');
+        }
+        studentKeys.append("6\n");
+        feeKeys.append("4\n");
+        markKeys.append("7\n");
+
+        try (FileOutputStream devNull = new FileOutputStream("/dev/null")) {
+            for (int mode = 0; mode < 3; mode++) {
+                // Console-like stream (flushes every line) unless buffered
+                PrintStream out = mode == 2
+                    ? new PrintStream(new BufferedOutputStream(devNull, 1 << 16), false)
+                    : new PrintStream(devNull, true);
+                System.setOut(out);
+                students registry = new students();
+                fees feeModule = new fees(registry);
+                Performance performance = new Performance(registry);
+                long t0 = System.nanoTime();
+                long failed = 0;
+                if (mode == 0) {
+                    Scanner input = new Scanner(studentKeys + feeKeys.toString() + markKeys);
+                    registry.run(input);
+                    feeModule.run(input);
+                    performance.run(input);
+                } else {
+                    CommandShell shell = new CommandShell(registry, null, feeModule, null, performance, null);
+                    failed = shell.run(new BufferedReader(new StringReader(script.toString())));
+                }
+                out.flush();
+                long elapsed = Math.max(1, millis(t0));
+                loud();
+                String label = mode == 0 ? "menus, shared Scanner" : mode == 1 ? "script, line-flushed output" : "script, buffered output";
+                REAL_OUT.println(String.format("%-28s %6d ms %,10.0f commands/s | %,d students, failed %d, fees consistent: %s",
+                    label + ":", elapsed, 3.0 * n * 1000 / elapsed, registry.size(), failed, feeModule.checkConsistency()));
+            }
+        } catch (IOException e) {
+            loud();
+            REAL_OUT.println("Script benchmark failed: " + e);
+        }
+    }
+
+    //  Long listings: println per row vs the buffered Listing, pages and file exports
+    private static void listingBenchmark() {
+        int n = 200_000;
+        REAL_OUT.println(String.format("\nLISTINGS (%,d students with payments and marks, console output to /dev/null)", n));
+        quiet();
+        String[] ids = makeIds(n);
+        students registry = new students();
+        fees feeModule = new fees(registry);
+        Performance performance = new Performance(registry);
+        for (int i = 0; i < n; i++) {
+            registry.addStudent(ids[i], "Student " + i, (i * 37) % 80_000);
+            double[] marks = new double[performance.subjectCount()];
+            for (int s = 0; s < marks.length; s++) marks[s] = ((i + s * 13) % 1000) / 10.0;
+            performance.recordMarks(ids[i], marks);
+        }
+
+        try (FileOutputStream devNull = new FileOutputStream("/dev/null")) {
+            Path dir = Files.createTempDirectory("listing-bench");
+            // Console-like: println flushes every line
+            System.setOut(new PrintStream(devNull, true));
+
+            long baseline = bestOf(3, () -> {
+                System.out.println("\nRegistered Students:");
+                students.StudentCursor cur = registry.cursor();
+                int idx = 1;
+                while (cur.next()) {
+                    System.out.println(idx + ". ID: " + cur.id() + " | Name: " + cur.name() + " | Paid: " + cur.amountPaid());
+                    idx++;
+                }
+            });
+            long students = bestOf(3, registry::displayAllStudents);
+            long fees = bestOf(3, feeModule::displayFeeStatus);
+            long marks = bestOf(3, performance::displayAllPerformance);
+            Listing.Mode deep = Listing.Mode.page(n - 1_000, Listing.PAGE_ROWS);
+            long studentPage = bestOf(3, () -> registry.displayStudents(deep));
+            long marksPage = bestOf(3, () -> performance.displayAllPerformance(deep));
+            Path studentFile = dir.resolve("students.txt");
+            Path marksFile = dir.resolve("marks.txt");
+            long studentExport = bestOf(3, () -> registry.displayStudents(Listing.Mode.export(studentFile)));
+            long marksExport = bestOf(3, () -> performance.displayAllPerformance(Listing.Mode.export(marksFile)));
+            loud();
+
+            REAL_OUT.println(String.format("Students, println per row:   %6d ms", baseline / 1_000_000));
+            REAL_OUT.println(String.format("Students, Listing:           %6d ms (%.1fx)", students / 1_000_000, (double) baseline / students));
+            REAL_OUT.println(String.format("Fee status, Listing:         %6d ms", fees / 1_000_000));
+            REAL_OUT.println(String.format("Performance, Listing:        %6d ms", marks / 1_000_000));
+            REAL_OUT.println(String.format("One page at row %,d: students %,d us (walks the list), marks %,d us (direct)",
+                n - 1_000, studentPage / 1_000, marksPage / 1_000));
+            REAL_OUT.println(String.format("Export to file: students %d ms (%,d KB), marks %d ms (%,d KB)",
+                studentExport / 1_000_000, Files.size(studentFile) / 1024, marksExport / 1_000_000, Files.size(marksFile) / 1024));
+            deleteTree(dir);
+        } catch (IOException e) {
+            loud();
+            REAL_OUT.println("Listing benchmark failed: " + e);
+        }
+    }
+
+    private static long dirSize(Path dir) throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) total += Files.size(f);
+        }
+        return total;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+
+    //  Catalogue search: linear title/author scan vs inverted index + prefix trie
+    private static void searchBenchmark() {
+        int n = 2_000_000;
+        REAL_OUT.println(String.format("\nCATALOGUE SEARCH (%,d books)", n));
+
+        // Synthetic catalogue: 4-6 title words from a skewed 20k vocabulary, 50k authors
+        Random random = new Random(18);
+        String[] vocabulary = new String[20_000];
+        for (int i = 0; i < vocabulary.length; i++) vocabulary[i] = syntheticWord(random, 3 + random.nextInt(7));
+        vocabulary[0] = "java";
+        vocabulary[1] = "programming";
+        vocabulary[2] = "design";
+        String[] authors = new String[50_000];
+        for (int i = 0; i < authors.length; i++) {
+            authors[i] = capitalise(syntheticWord(random, 5)) + " " + capitalise(syntheticWord(random, 7));
+        }
+        String[] titles = new String[n];
+        String[] writers = new String[n];
+        for (int b = 0; b < n; b++) {
+            StringBuilder sb = new StringBuilder();
+            int words = 4 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) sb.append(' ');
+                int r = random.nextInt(vocabulary.length);
+                sb.append(capitalise(vocabulary[(int) ((long) r * r / vocabulary.length)])); // favour low ranks
+            }
+            titles[b] = sb.toString();
+            writers[b] = authors[random.nextInt(authors.length)];
+        }
+
+        CatalogueIndex index = new CatalogueIndex();
+        long t0 = System.nanoTime();
+        for (int b = 0; b < n; b++) index.add("B" + b, titles[b], writers[b]);
+        REAL_OUT.println(String.format("index build: %d ms (%,d adds, incremental)", millis(t0), n));
+
+        String rare = vocabulary[5_000];
+        String[] queries = {"java programming", "design " + rare, rare, "jav", "j", "java des", writers[7].toLowerCase()};
+        for (String q : queries) {
+            List<String> hits = new ArrayList<>();
+            long indexed = bestOf(5, () -> {
+                hits.clear();
+                hits.addAll(index.search(q, 10));
+            });
+            long scan = bestOf(1, () -> linearSearch(titles, writers, q, 10));
+            REAL_OUT.println(String.format("%-24s index %8.3f ms | scan %7d ms | top hit: %s",
+                "'" + q + "'", indexed / 1e6, scan / 1_000_000,
+                hits.isEmpty() ? "-" : titles[Integer.parseInt(hits.get(0).substring(1))]));
+        }
+    }
+
+    // Baseline: every book's words checked against every query word
+    private static int linearSearch(String[] titles, String[] writers, String query, int limit) {
+        List<String> words = CatalogueIndex.tokenize(query);
+        int found = 0;
+        for (int b = 0; b < titles.length; b++) {
+            String text = (titles[b] + " " + writers[b]).toLowerCase();
+            boolean all = true;
+            for (String w : words) {
+                if (!text.contains(w)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) found++;
+        }
+        return Math.min(found, limit);
+    }
+
+    private static String syntheticWord(Random random, int length) {
+        char[] c = new char[length];
+        for (int i = 0; i < length; i++) c[i] = (char) ('a' + random.nextInt(26));
+        return new String(c);
+    }
+
+    private static String capitalise(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    //  Catalogue loading: BufferedReader + split vs memory-mapped parse (sequential / parallel)
+    private static void catalogueBenchmark() {
+        int n = 2_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        REAL_OUT.println(String.format("\nCATALOGUE LOAD (%,d records, %d cores)", n, cores));
+
+        // Titles drawn from a 20k-word vocabulary, as in a real catalogue
+        Path file;
+        try {
+            file = Files.createTempFile("catalogue", ".tsv");
+            file.toFile().deleteOnExit();
+            Random random = new Random(19);
+            String[] vocabulary = new String[20_000];
+            for (int i = 0; i < vocabulary.length; i++) vocabulary[i] = capitalise(syntheticWord(random, 3 + random.nextInt(7)));
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                out.write("isbn\ttitle\tauthor\n");
+                for (int i = 0; i < n; i++) {
+                    out.write(Long.toString(9780000000000L + i));
+                    out.write('\t');
+                    int words = 3 + random.nextInt(4);
+                    for (int w = 0; w < words; w++) {
+                        if (w > 0) out.write(' ');
+                        out.write(vocabulary[random.nextInt(vocabulary.length)]);
+                    }
+                    out.write('\t');
+                    out.write(vocabulary[random.nextInt(vocabulary.length)] + " " + vocabulary[random.nextInt(vocabulary.length)]);
+                    out.write('\n');
+                }
+            }
+            REAL_OUT.println(String.format("file: %.1f MB", Files.size(file) / (1024.0 * 1024.0)));
+        } catch (IOException e) {
+            REAL_OUT.println("Could not write catalogue file: " + e.getMessage());
+            return;
+        }
+
+        // Parse only: fields are produced and dropped, so the reading itself is compared
+        long[] checksum = new long[1];
+        long readerTime = bestOf(3, () -> {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                in.readLine();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] f = line.split("\t");
+                    checksum[0] += f[0].length() + f[1].length() + f[2].length();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        REAL_OUT.println(String.format("parse, BufferedReader + split:     %5d ms", readerTime / 1_000_000));
+        for (boolean parallel : new boolean[]{false, true}) {
+            long mappedTime = bestOf(3, () -> {
+                try {
+                    CatalogueLoader.load(file, parallel, new CatalogueLoader.Sink() {
+                        public boolean add(String isbn, String title, String author) {
+                            checksum[0] += isbn.length() + title.length() + author.length();
+                            return true;
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            REAL_OUT.println(String.format("parse, memory-mapped (%-10s):  %5d ms",
+                parallel ? "parallel" : "sequential", mappedTime / 1_000_000));
+        }
+
+        // Full startup: books, loan indexes and the search index
+        for (boolean parallel : new boolean[]{false, true}) {
+            REAL_OUT.print("library startup (" + (parallel ? "parallel" : "sequential") + "): ");
+            new Library(null, file.toString(), parallel, System::currentTimeMillis);
+        }
+    }
+
+    //  Helpers
+
+    // Best wall-clock time in nanoseconds over several runs
+    static long bestOf(int runs, Runnable task) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return best;
+    }
+    static String[] makeIds(int n) {
+        String[] ids = new String[n];
+        for (int i = 0; i < n; i++) ids[i] = "S" + (100000 + i);
+        return ids;
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static long millis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    // Module methods print per call; silence them while timing
+    static void quiet() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static void loud() {
+        System.setOut(REAL_OUT);
+    }
+}
@@ -0,0 +1,318 @@
+package mine;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Search index over book titles and authors, updated one book at a time.
+//  - Inverted index: token -> postings (book number << 2 | field bits), kept sorted
+//    because books are numbered in the order they are added.
+//  - Prefix trie over all tokens, so the last word of a query can be completed
+//    while the user is still typing.
+// Queries match every word (the last one as a prefix) by intersecting postings,
+// smallest list first. Ranking is only a sum of per-field weights for the words
+// that matched (title beats author); there is no term frequency or length factor.
+// A prefix always stands for every one of its completions, so results are exact:
+// nothing is cut, whether the prefix is alone or ANDed with whole words.
+class CatalogueIndex {
+
+    private static final int TITLE = 1;
+    private static final int AUTHOR = 2;
+
+    // Growable sorted int list (one per token)
+    private static class Postings {
+        int[] items = new int[2];
+        int size;
+
+        void add(int value) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = value;
+        }
+    }
+
+    // Trie node; children in a small sorted array, token set when a word ends here
+    private static class TrieNode {
+        char[] keys = new char[0];
+        TrieNode[] children = new TrieNode[0];
+        String token;
+
+        TrieNode child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        TrieNode childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) return children[i];
+            int at = -i - 1;
+            char[] k = new char[keys.length + 1];
+            TrieNode[] ch = new TrieNode[children.length + 1];
+            System.arraycopy(keys, 0, k, 0, at);
+            System.arraycopy(children, 0, ch, 0, at);
+            System.arraycopy(keys, at, k, at + 1, keys.length - at);
+            System.arraycopy(children, at, ch, at + 1, children.length - at);
+            TrieNode node = new TrieNode();
+            k[at] = c;
+            ch[at] = node;
+            keys = k;
+            children = ch;
+            return node;
+        }
+    }
+
+    private final Map<String, Postings> inverted = new HashMap<>();
+    private final TrieNode trie = new TrieNode();
+    private String[] isbns = new String[16];   // book number -> ISBN
+    private int bookCount;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Indexes one new book; cost depends only on the book's own words
+    public void add(String isbn, String title, String author) {
+        // Distinct tokens with the fields they appear in (a title has few words: linear de-dup)
+        List<String> tokens = tokenize(title);
+        int titleWords = tokens.size();
+        tokens.addAll(tokenize(author));
+        int[] fields = new int[tokens.size()];
+        int distinct = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            String t = tokens.get(i);
+            int field = i < titleWords ? TITLE : AUTHOR;
+            int j = 0;
+            while (j < distinct && !tokens.get(j).equals(t)) j++;
+            if (j == distinct) tokens.set(distinct++, t);
+            fields[j] |= field;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (bookCount == isbns.length) isbns = Arrays.copyOf(isbns, bookCount * 2);
+            int book = bookCount++;
+            isbns[book] = isbn;
+            for (int i = 0; i < distinct; i++) {
+                String token = tokens.get(i);
+                Postings p = inverted.get(token);
+                if (p == null) {
+                    p = new Postings();
+                    inverted.put(token, p);
+                    addToTrie(token);
+                }
+                p.add(book << 2 | fields[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return bookCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Best matches first; a query not ending in a space treats its last word as a prefix
+    public List<String> search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) return Collections.emptyList();
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+        String prefix = lastIsPrefix ? words.remove(words.size() - 1) : null;
+
+        lock.readLock().lock();
+        try {
+            // Candidates as parallel arrays: book numbers (ascending) and scores
+            int[] books = null;
+            int[] scores = null;
+            int count = 0;
+
+            // Whole words: intersect postings, shortest list first
+            List<Postings> lists = new ArrayList<>();
+            for (String w : words) {
+                Postings p = inverted.get(w);
+                if (p == null) return Collections.emptyList();
+                lists.add(p);
+            }
+            lists.sort(Comparator.comparingInt(p -> p.size));
+            for (Postings p : lists) {
+                if (books == null) {
+                    books = new int[p.size];
+                    scores = new int[p.size];
+                    for (int i = 0; i < p.size; i++) {
+                        books[i] = p.items[i] >>> 2;
+                        scores[i] = fieldScore(p.items[i], 3, 1);
+                    }
+                    count = p.size;
+                } else {
+                    count = intersect(books, scores, count, p);
+                }
+                if (count == 0) return Collections.emptyList();
+            }
+
+            // Prefix word alone: the union of all its completions.
+            // After whole words: keep candidates found under any completion
+            if (prefix != null) {
+                if (books == null) return prefixOnly(completions(prefix), limit);
+                count = intersectPrefix(books, scores, count, completions(prefix));
+            }
+
+            return topResults(books, scores, count, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Keeps candidates that also appear in p (two-pointer walk over sorted lists)
+    private static int intersect(int[] books, int[] scores, int count, Postings p) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < p.size; i++) {
+            while (j < p.size && (p.items[j] >>> 2) < books[i]) j++;
+            if (j < p.size && (p.items[j] >>> 2) == books[i]) {
+                books[kept] = books[i];
+                scores[kept] = scores[i] + fieldScore(p.items[j], 3, 1);
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    // Keeps candidates that appear in any of the lists, one list at a time (no merged
+    // copy, no cap); each check is a binary search into whichever side is longer
+    private static int intersectPrefix(int[] books, int[] scores, int count, List<Postings> lists) {
+        int[] fields = new int[count];
+        for (Postings p : lists) {
+            if (p.size < count) {
+                for (int j = 0; j < p.size; j++) {
+                    int i = Arrays.binarySearch(books, 0, count, p.items[j] >>> 2);
+                    if (i >= 0) fields[i] |= p.items[j] & 3;
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    // Field bits are never 0, so book << 2 itself is never present
+                    int j = -Arrays.binarySearch(p.items, 0, p.size, books[i] << 2) - 1;
+                    if (j < p.size && (p.items[j] >>> 2) == books[i]) fields[i] |= p.items[j] & 3;
+                }
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (fields[i] == 0) continue;
+            books[kept] = books[i];
+            scores[kept] = scores[i] + fieldScore(fields[i], 2, 1);
+            kept++;
+        }
+        return kept;
+    }
+
+    private static int fieldScore(int posting, int titleScore, int authorScore) {
+        int score = 0;
+        if ((posting & TITLE) != 0) score += titleScore;
+        if ((posting & AUTHOR) != 0) score += authorScore;
+        return score;
+    }
+
+    // Postings of every completion of the prefix
+    private List<Postings> completions(String prefix) {
+        List<Postings> lists = new ArrayList<>();
+        TrieNode node = trie;
+        for (int i = 0; i < prefix.length() && node != null; i++) node = node.child(prefix.charAt(i));
+        if (node == null) return lists;
+
+        Deque<TrieNode> queue = new ArrayDeque<>();
+        queue.add(node);
+        while (!queue.isEmpty()) {
+            TrieNode n = queue.poll();
+            if (n.token != null) lists.add(inverted.get(n.token));
+            Collections.addAll(queue, n.children);
+        }
+        return lists;
+    }
+
+    // Exact top results for a prefix on its own. A book's fields are ORed over all
+    // completions, so one whose title and author both complete the prefix scores 3.
+    // Few postings: copied, sorted and merged. Many (a short prefix over a large
+    // catalogue): ORed into one byte per book, which is then read in book order
+    private List<String> prefixOnly(List<Postings> lists, int limit) {
+        long total = 0;
+        for (Postings p : lists) total += p.size;
+        if (total == 0) return Collections.emptyList();
+
+        if (total < bookCount / 8) {
+            int[] merged = new int[(int) total];
+            int n = 0;
+            for (Postings p : lists) {
+                System.arraycopy(p.items, 0, merged, n, p.size);
+                n += p.size;
+            }
+            Arrays.sort(merged);
+            int[] books = new int[n];
+            int[] scores = new int[n];
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                int fields = merged[i] & 3;
+                while (i + 1 < n && (merged[i + 1] >>> 2) == (merged[i] >>> 2)) fields |= merged[++i] & 3;
+                books[count] = merged[i] >>> 2;
+                scores[count++] = fieldScore(fields, 2, 1);
+            }
+            return topResults(books, scores, count, limit);
+        }
+
+        byte[] fields = new byte[bookCount];
+        for (Postings p : lists) {
+            for (int i = 0; i < p.size; i++) fields[p.items[i] >>> 2] |= (byte) (p.items[i] & 3);
+        }
+        // The first `limit` books of each score, in book order; once the top score
+        // (3, both fields) has `limit` books nothing later can displace them
+        int[][] picked = new int[4][limit];
+        int[] picks = new int[4];
+        for (int b = 0; b < bookCount && picks[3] < limit; b++) {
+            int score = fieldScore(fields[b], 2, 1);
+            if (score > 0 && picks[score] < limit) picked[score][picks[score]++] = b;
+        }
+        List<String> result = new ArrayList<>(limit);
+        for (int score = 3; score > 0; score--) {
+            for (int i = 0; i < picks[score] && result.size() < limit; i++) result.add(isbns[picked[score][i]]);
+        }
+        return result;
+    }
+
+    // Highest score first, earlier-added book first on ties
+    private List<String> topResults(int[] books, int[] scores, int count, int limit) {
+        PriorityQueue<int[]> best = new PriorityQueue<>((a, b) ->
+            a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(b[0], a[0])); // worst on top
+        for (int i = 0; i < count; i++) {
+            if (best.size() < limit) {
+                best.add(new int[]{books[i], scores[i]});
+            } else if (scores[i] > best.peek()[1]) {
+                best.poll();
+                best.add(new int[]{books[i], scores[i]});
+            }
+        }
+        String[] result = new String[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) result[i] = isbns[best.poll()[0]];
+        return Arrays.asList(result);
+    }
+
+    private void addToTrie(String token) {
+        TrieNode node = trie;
+        for (int i = 0; i < token.length(); i++) node = node.childOrCreate(token.charAt(i));
+        node.token = token;
+    }
+
+    // Lower-case letter/digit runs
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
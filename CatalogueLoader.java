@@ -0,0 +1,398 @@
+package mine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+
+// Bulk catalogue loader: memory-maps a CSV or TSV file (isbn, title, author per line)
+// and parses fields straight from the mapped bytes; only the three field Strings of
+// each record are ever created. Files larger than one mapping are walked in windows.
+// A first pass counts records so the caller can pre-size its maps; in parallel mode
+// the file is cut into one line-aligned chunk per core and each chunk parsed on its own
+// thread, a bounded number of batches ahead of the sink. Either way the sink gets the
+// records on the calling thread in file order, so the first copy of a duplicate ISBN
+// wins and books are numbered as in the file.
+// Separator is a tab if the first line contains one, otherwise a comma. CSV fields may be
+// double-quoted ("" inside quotes is a quote) but may not span lines. A first line whose
+// first field is "isbn" is treated as a header and skipped.
+class CatalogueLoader {
+
+    private static final long MAX_WINDOW = 1L << 30; // bytes mapped at a time
+    private static final int MAX_FIELD = 64 * 1024;
+    private static final int BATCH = 1024;          // records handed over at a time
+    private static final int QUEUED_BATCHES = 16;   // per chunk, parsed but not yet taken
+
+    // Receives records on the loading thread, in file order
+    interface Sink {
+        // Called once before any record with the number of lines to expect
+        default void expect(long records) {}
+
+        // Returns false when the ISBN is already present
+        boolean add(String isbn, String title, String author);
+    }
+
+    static class Result {
+        long bytes;
+        long lines;       // non-blank lines, header excluded
+        long loaded;
+        long duplicates;
+        long malformed;   // fewer than three fields or an empty ISBN
+        long millis;
+        int threads;
+    }
+
+    static Result load(Path file, boolean parallel, Sink sink) throws IOException {
+        long t0 = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            byte separator = detectSeparator(channel);
+            int threads = parallel ? Math.max(1, Runtime.getRuntime().availableProcessors()) : 1;
+            if (size < 1 << 20) threads = 1; // not worth splitting small files
+            long[] bounds = chunkBounds(channel, size, threads);
+
+            sink.expect(runChunks(bounds, chunk -> countLines(channel, bounds[chunk], bounds[chunk + 1])).lines);
+            Result total = bounds.length == 2
+                ? parse(channel, 0, size, separator, sink)
+                : parseInOrder(channel, bounds, separator, sink);
+
+            total.bytes = size;
+            total.threads = bounds.length - 1;
+            total.millis = (System.nanoTime() - t0) / 1_000_000;
+            return total;
+        }
+    }
+
+    private interface ChunkTask {
+        Result run(int chunk) throws IOException;
+    }
+
+    // Runs one task per chunk (on the calling thread when there is only one) and sums the counts
+    private static Result runChunks(long[] bounds, ChunkTask task) throws IOException {
+        int chunks = bounds.length - 1;
+        List<Result> parts = new ArrayList<>();
+        if (chunks == 1) {
+            parts.add(task.run(0));
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(chunks);
+            try {
+                List<Future<Result>> futures = new ArrayList<>();
+                for (int c = 0; c < chunks; c++) {
+                    int chunk = c;
+                    futures.add(pool.submit(() -> task.run(chunk)));
+                }
+                for (Future<Result> f : futures) parts.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Catalogue load interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        Result total = new Result();
+        for (Result r : parts) {
+            total.lines += r.lines;
+            total.loaded += r.loaded;
+            total.duplicates += r.duplicates;
+            total.malformed += r.malformed;
+        }
+        return total;
+    }
+
+    // Parses every chunk on its own thread and feeds the sink (on this thread) chunk by
+    // chunk. Each chunk queues at most QUEUED_BATCHES batches, so memory stays bounded:
+    // the chunk being drained is parsed alongside the sink, later ones wait their turn
+    private static Result parseInOrder(FileChannel channel, long[] bounds, byte separator, Sink sink) throws IOException {
+        int chunks = bounds.length - 1;
+        Result total = new Result();
+        ExecutorService pool = Executors.newFixedThreadPool(chunks);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            Batches[] batches = new Batches[chunks];
+            for (int c = 0; c < chunks; c++) {
+                int chunk = c;
+                batches[chunk] = new Batches();
+                futures.add(pool.submit(() -> {
+                    try {
+                        return parse(channel, bounds[chunk], bounds[chunk + 1], separator, batches[chunk]);
+                    } finally {
+                        batches[chunk].finish();
+                    }
+                }));
+            }
+            for (int c = 0; c < chunks; c++) {
+                batches[c].drainTo(sink, total);
+                Result part = futures.get(c).get();
+                total.lines += part.lines;
+                total.malformed += part.malformed;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Catalogue load interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return total;
+    }
+
+    // One chunk's well-formed records on their way to the sink, BATCH at a time.
+    // The parser blocks once QUEUED_BATCHES batches are waiting
+    private static class Batches implements Sink {
+        private static final String[] END = new String[0];
+        private final BlockingQueue<String[]> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        private String[] fields = new String[3 * BATCH];
+        private int size; // used entries of fields
+
+        public boolean add(String isbn, String title, String author) {
+            fields[size++] = isbn;
+            fields[size++] = title;
+            fields[size++] = author;
+            if (size == fields.length) {
+                put(fields);
+                fields = new String[3 * BATCH];
+                size = 0;
+            }
+            return true;
+        }
+
+        // Parser side, once the chunk is done or has failed: the rest, then the end mark
+        void finish() {
+            if (size > 0) put(Arrays.copyOf(fields, size));
+            put(END);
+        }
+
+        private void put(String[] batch) {
+            try {
+                queue.put(batch);
+            } catch (InterruptedException e) {
+                // the load was abandoned (shutdownNow)
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Catalogue load abandoned");
+            }
+        }
+
+        // Sink side: every record up to the end mark
+        void drainTo(Sink sink, Result total) throws InterruptedException {
+            for (String[] batch = queue.take(); batch != END; batch = queue.take()) {
+                for (int i = 0; i < batch.length; i += 3) {
+                    if (sink.add(batch[i], batch[i + 1], batch[i + 2])) total.loaded++;
+                    else total.duplicates++;
+                }
+            }
+        }
+    }
+
+    // File size and CRC32C (hex) of a whole file, one mapped window at a time; logged
+    // with a catalogue load so recovery can tell whether the file is still the same
+    static String[] stamp(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            CRC32C crc = new CRC32C();
+            for (long pos = 0; pos < size; pos += MAX_WINDOW) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAX_WINDOW, size - pos)));
+            }
+            return new String[]{Long.toString(size), Long.toHexString(crc.getValue())};
+        }
+    }
+
+    //  Chunking
+
+    // Chunk start offsets; every chunk but the first starts just after a newline
+    private static long[] chunkBounds(FileChannel channel, long size, int chunks) throws IOException {
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        for (int c = 1; c < chunks; c++) {
+            long from = Math.max(bounds[c - 1], size * c / chunks);
+            bounds[c] = nextLineStart(channel, from, size);
+        }
+        return bounds;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        if (from == 0) return 0;
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        long pos = from - 1; // from may already be a line start
+        while (pos < size) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') return pos + i + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private static byte detectSeparator(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        int n = channel.read(buf, 0);
+        for (int i = 0; i < n; i++) {
+            byte b = buf.get(i);
+            if (b == '\t') return '\t';
+            if (b == '\n') break;
+        }
+        return ',';
+    }
+
+    //  Parsing
+
+    // Newline bytes in [start, end), eight at a time; an upper bound on the record count
+    private static Result countLines(FileChannel channel, long start, long end) throws IOException {
+        Result r = new Result();
+        long pos = start;
+        while (pos < end) {
+            long len = Math.min(MAX_WINDOW, end - pos);
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len).order(ByteOrder.LITTLE_ENDIAN);
+            int limit = (int) len;
+            int i = 0;
+            for (; i + 8 <= limit; i += 8) r.lines += Long.bitCount(zeroBytes(buf.getLong(i) ^ NEWLINES));
+            for (; i < limit; i++) {
+                if (buf.get(i) == '\n') r.lines++;
+            }
+            pos += len;
+        }
+        if (end > start) r.lines++; // last line may lack a newline
+        return r;
+    }
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_SEVEN = 0x7F7F7F7F7F7F7F7FL;
+
+    // High bit set in exactly the zero bytes of x
+    private static long zeroBytes(long x) {
+        long y = (x & LOW_SEVEN) + LOW_SEVEN;
+        return ~(y | x | LOW_SEVEN);
+    }
+
+    // Per-thread parse state: scratch bytes and the fields of the current line
+    private static class LineParser {
+        final byte separator;
+        final long separators;   // separator repeated in every byte
+        final byte[] scratch = new byte[MAX_FIELD];
+        final String[] fields = new String[3];
+        int fieldCount;
+
+        LineParser(byte separator) {
+            this.separator = separator;
+            this.separators = (separator & 0xFFL) * 0x0101010101010101L;
+        }
+
+        // Index of the next separator or newline at or after pos, or limit
+        int nextDelimiter(ByteBuffer buf, int pos, int limit) {
+            for (; pos + 8 <= limit; pos += 8) {
+                long word = buf.getLong(pos);
+                long hits = zeroBytes(word ^ separators) | zeroBytes(word ^ NEWLINES);
+                if (hits != 0) return pos + (Long.numberOfTrailingZeros(hits) >>> 3);
+            }
+            for (; pos < limit; pos++) {
+                byte b = buf.get(pos);
+                if (b == separator || b == '\n') return pos;
+            }
+            return limit;
+        }
+
+        // Parses the fields of the line starting at pos (extra fields are dropped);
+        // returns the index of its newline, limit if the buffer ends first
+        int line(ByteBuffer buf, int pos, int limit) {
+            fieldCount = 0;
+            while (true) {
+                int end;
+                if (pos < limit && buf.get(pos) == '"') {
+                    end = quoted(buf, pos + 1, limit);
+                } else {
+                    end = nextDelimiter(buf, pos, limit);
+                    if (fieldCount < 3) {
+                        int len = Math.min(end - pos, scratch.length);
+                        buf.get(pos, scratch, 0, len);
+                        fields[fieldCount++] = new String(scratch, 0, len, StandardCharsets.UTF_8).trim();
+                    }
+                }
+                if (end == limit || buf.get(end) == '\n') return end;
+                pos = end + 1; // skip separator
+            }
+        }
+
+        // Reads a quoted field from just after the opening quote; returns the delimiter index
+        private int quoted(ByteBuffer buf, int pos, int limit) {
+            int len = 0;
+            while (pos < limit) {
+                byte b = buf.get(pos);
+                if (b == '\n') break; // unterminated quote ends with the line
+                if (b == '"') {
+                    if (pos + 1 < limit && buf.get(pos + 1) == '"') {
+                        pos++; // escaped quote
+                    } else {
+                        pos++;
+                        break;
+                    }
+                }
+                if (len < scratch.length) scratch[len++] = b;
+                pos++;
+            }
+            int end = nextDelimiter(buf, pos, limit); // junk after the closing quote is dropped
+            if (fieldCount < 3) fields[fieldCount++] = new String(scratch, 0, len, StandardCharsets.UTF_8).trim();
+            return end;
+        }
+
+        boolean isBlank() {
+            return fieldCount == 1 && fields[0].isEmpty();
+        }
+    }
+
+    private static Result parse(FileChannel channel, long start, long end, byte separator, Sink sink) throws IOException {
+        Result r = new Result();
+        LineParser parser = new LineParser(separator);
+        boolean first = start == 0;
+        long pos = start;
+        while (pos < end) {
+            long len = Math.min(MAX_WINDOW, end - pos);
+            boolean lastWindow = pos + len == end;
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len).order(ByteOrder.LITTLE_ENDIAN);
+            int limit = (int) len;
+
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int nl = parser.line(buf, lineStart, limit);
+                if (nl == limit && !lastWindow) break; // partial line: re-map from its start
+
+                if (!parser.isBlank()) {
+                    if (first && parser.fields[0].equalsIgnoreCase("isbn")) {
+                        // header row
+                    } else {
+                        r.lines++;
+                        accept(parser, sink, r);
+                    }
+                }
+                first = false;
+                lineStart = nl + 1;
+            }
+            if (lineStart == 0 && !lastWindow) {
+                throw new IOException("Catalogue line longer than " + MAX_WINDOW + " bytes at offset " + pos);
+            }
+            pos += Math.min(lineStart, limit);
+        }
+        return r;
+    }
+
+    private static void accept(LineParser parser, Sink sink, Result r) {
+        if (parser.fieldCount < 3 || parser.fields[0].isEmpty()) {
+            r.malformed++;
+        } else if (sink.add(parser.fields[0], parser.fields[1], parser.fields[2])) {
+            r.loaded++;
+        } else {
+            r.duplicates++;
+        }
+    }
+}
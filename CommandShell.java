@@ -0,0 +1,386 @@
+package mine;
+
+import java.io.*;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.*;
+
+// Headless command interpreter for scripts and batch jobs: one command per line, no
+// prompts, no menus. Words are separated by spaces; "double quotes" keep a phrase
+// together ("" inside quotes is a quote) and # starts a comment line.
+//   student add <id> <name> <amount> | remove <id> | find <id> | list | import <file> [rejectFile]
+//   fees    pay <id> <amount> | list | report
+//   course  add <name> <capacity> | capacity <name> <capacity> | assign | fill
+//           | prefs <id> <course>... | priority <id> <n> | match | find <id> | drop <id>
+//           | move <id> <course> | load <id> <course>... | sessions <course> <n> | timetable | list
+//   library borrow <id> <isbn> | return <id> <isbn> | reserve <id> <isbn> | copies <isbn> <n>
+//           | available | borrowed | loans <id> | overdue | search <words> | load <file>
+//   marks   set <id> <mark per subject> | show <id> | list | report | top <k> | rank <id>
+//   checkpoint | help
+// Listings (student/fees/course/marks list, library available/borrowed/overdue) take
+// an optional [offset [limit]] for one page; "<group> export <listing> <file>" writes
+// the whole listing to a file instead (e.g. "student export list students.txt").
+// Module output goes to System.out as in the menus (Mainmenu buffers it in script mode).
+// A command that is malformed or refused is reported with its line number and the
+// script carries on.
+class CommandShell {
+
+    private final students studentModule;
+    private final Courses courseModule;
+    private final fees feeModule;
+    private final Library libraryModule;
+    private final Performance performanceModule;
+    private final Persistence persistence; // may be null
+
+    private long executed;
+    private long failed;
+
+    CommandShell(students studentModule, Courses courseModule, fees feeModule, Library libraryModule,
+                 Performance performanceModule, Persistence persistence) {
+        this.studentModule = studentModule;
+        this.courseModule = courseModule;
+        this.feeModule = feeModule;
+        this.libraryModule = libraryModule;
+        this.performanceModule = performanceModule;
+        this.persistence = persistence;
+    }
+
+    // Runs every line of the script; returns the number of commands that failed
+    public long run(BufferedReader script) throws IOException {
+        long lineNumber = 0;
+        String line;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            List<String> words = split(line);
+            if (words.isEmpty()) continue;
+            executed++;
+            String error;
+            try {
+                error = execute(words);
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            if (error != null) {
+                failed++;
+                System.out.println("line " + lineNumber + ": " + error + ": " + line.trim());
+            }
+            if (persistence != null) persistence.maybeCheckpoint();
+        }
+        return failed;
+    }
+
+    public long executed() {
+        return executed;
+    }
+
+    public long failed() {
+        return failed;
+    }
+
+    // Runs one command; null on success, otherwise why it failed
+    public String execute(List<String> words) {
+        String verb = words.size() > 1 ? words.get(1).toLowerCase(Locale.ROOT) : "";
+        switch (words.get(0).toLowerCase(Locale.ROOT)) {
+            case "student":
+                return student(verb, words);
+            case "fees":
+                return fees(verb, words);
+            case "course":
+                return course(verb, words);
+            case "library":
+                return library(verb, words);
+            case "marks":
+                return marks(verb, words);
+            case "checkpoint":
+                if (persistence == null) return "no saved data to checkpoint";
+                try {
+                    persistence.checkpoint();
+                    return null;
+                } catch (IOException e) {
+                    return "checkpoint failed (" + e.getMessage() + ")";
+                }
+            case "help":
+                System.out.println("student add|remove|find|list|import|export, fees pay|list|report|export, "
+                    + "course add|capacity|assign|fill|prefs|priority|match|find|drop|move|load|sessions|timetable|list|export, "
+                    + "library borrow|return|reserve|copies|available|borrowed|loans|overdue|search|load|export, "
+                    + "marks set|show|list|report|top|rank|export, checkpoint; "
+                    + "listings take [offset [limit]]");
+                return null;
+            default:
+                return "unknown command";
+        }
+    }
+
+    private String student(String verb, List<String> w) {
+        switch (verb) {
+            case "add":
+                expect(w, 5, "student add <id> <name> <amount>");
+                return ok(studentModule.addStudent(w.get(2), w.get(3), number(w.get(4))));
+            case "remove":
+                expect(w, 3, "student remove <id>");
+                return ok(studentModule.deleteStudent(w.get(2)));
+            case "find":
+                expect(w, 3, "student find <id>");
+                studentModule.searchStudent(w.get(2));
+                return null;
+            case "list":
+                studentModule.displayStudents(range(w, 2));
+                return null;
+            case "export":
+                expect(w, 4, "student export list <file>");
+                listing(w, "list");
+                return ok(studentModule.displayStudents(export(w)));
+            case "import":
+                if (w.size() != 3 && w.size() != 4) throw usage("student import <file> [rejectFile]");
+                return ok(studentModule.importStudents(w.get(2), w.size() == 4 ? w.get(3) : null));
+            default:
+                return "unknown student command";
+        }
+    }
+
+    private String fees(String verb, List<String> w) {
+        switch (verb) {
+            case "pay":
+                expect(w, 4, "fees pay <id> <amount>");
+                return ok(studentModule.recordPayment(w.get(2), number(w.get(3))));
+            case "list":
+                feeModule.displayFeeStatus(range(w, 2));
+                return null;
+            case "export":
+                expect(w, 4, "fees export list <file>");
+                listing(w, "list");
+                return ok(feeModule.displayFeeStatus(export(w)));
+            case "report":
+                feeModule.generateFeeReport();
+                return null;
+            default:
+                return "unknown fees command";
+        }
+    }
+
+    private String course(String verb, List<String> w) {
+        switch (verb) {
+            case "add":
+                expect(w, 4, "course add <name> <capacity>");
+                return ok(courseModule.addCourse(w.get(2), integer(w.get(3))));
+            case "capacity":
+                expect(w, 4, "course capacity <name> <capacity>");
+                return ok(courseModule.setCourseCapacity(w.get(2), integer(w.get(3))));
+            case "assign":
+                courseModule.autoAssignCourses();
+                return null;
+            case "fill":
+                courseModule.assignUnassignedStudents();
+                return null;
+            case "prefs":
+                if (w.size() < 4) throw usage("course prefs <id> <course>...");
+                return ok(courseModule.submitPreferences(w.get(2), w.subList(3, w.size())));
+            case "priority":
+                expect(w, 4, "course priority <id> <n>");
+                courseModule.setStudentPriority(w.get(2), integer(w.get(3)));
+                return null;
+            case "match":
+                courseModule.runPreferenceMatching();
+                return null;
+            case "find":
+                expect(w, 3, "course find <id>");
+                courseModule.findStudentCourse(w.get(2));
+                return null;
+            case "drop":
+                expect(w, 3, "course drop <id>");
+                return ok(courseModule.dropStudent(w.get(2)));
+            case "move":
+                expect(w, 4, "course move <id> <course>");
+                return ok(courseModule.moveStudent(w.get(2), w.get(3)));
+            case "load":
+                if (w.size() < 3) throw usage("course load <id> <course>...");
+                return ok(courseModule.setCourseLoad(w.get(2), w.subList(3, w.size())));
+            case "sessions":
+                expect(w, 4, "course sessions <course> <n>");
+                courseModule.setCourseSessions(w.get(2), integer(w.get(3)));
+                return null;
+            case "timetable":
+                courseModule.buildTimetable();
+                return null;
+            case "list":
+                courseModule.displayAllocations(range(w, 2));
+                return null;
+            case "export":
+                expect(w, 4, "course export list <file>");
+                listing(w, "list");
+                return ok(courseModule.displayAllocations(export(w)));
+            default:
+                return "unknown course command";
+        }
+    }
+
+    private String library(String verb, List<String> w) {
+        switch (verb) {
+            case "borrow":
+                expect(w, 4, "library borrow <id> <isbn>");
+                return ok(libraryModule.borrowBook(w.get(2), w.get(3)));
+            case "return":
+                expect(w, 4, "library return <id> <isbn>");
+                return ok(libraryModule.returnBook(w.get(2), w.get(3)));
+            case "reserve":
+                expect(w, 4, "library reserve <id> <isbn>");
+                return ok(libraryModule.reserveBook(w.get(2), w.get(3)));
+            case "copies":
+                expect(w, 4, "library copies <isbn> <n>");
+                return ok(libraryModule.addCopies(w.get(2), integer(w.get(3))));
+            case "available":
+                libraryModule.showAvailableBooks(range(w, 2));
+                return null;
+            case "borrowed":
+                libraryModule.showBorrowedBooks(range(w, 2));
+                return null;
+            case "loans":
+                expect(w, 3, "library loans <id>");
+                libraryModule.showStudentLoans(w.get(2));
+                return null;
+            case "overdue":
+                libraryModule.showOverdueLoans(range(w, 2));
+                return null;
+            case "export":
+                expect(w, 4, "library export available|borrowed|overdue <file>");
+                switch (listing(w, "available", "borrowed", "overdue")) {
+                    case "available":
+                        return ok(libraryModule.showAvailableBooks(export(w)));
+                    case "borrowed":
+                        return ok(libraryModule.showBorrowedBooks(export(w)));
+                    default:
+                        return ok(libraryModule.showOverdueLoans(export(w)));
+                }
+            case "search":
+                if (w.size() < 3) throw usage("library search <words>");
+                libraryModule.showSearchResults(String.join(" ", w.subList(2, w.size())));
+                return null;
+            case "load":
+                expect(w, 3, "library load <file>");
+                return ok(libraryModule.loadCatalogue(w.get(2), true));
+            default:
+                return "unknown library command";
+        }
+    }
+
+    private String marks(String verb, List<String> w) {
+        switch (verb) {
+            case "set": {
+                int subjects = performanceModule.subjectCount();
+                expect(w, 3 + subjects, "marks set <id> <" + subjects + " marks>");
+                if (!studentModule.isRegistered(w.get(2))) return "student not registered";
+                double[] marks = new double[subjects];
+                for (int s = 0; s < subjects; s++) marks[s] = number(w.get(3 + s));
+                return ok(performanceModule.recordMarks(w.get(2), marks));
+            }
+            case "show":
+                expect(w, 3, "marks show <id>");
+                performanceModule.viewStudentPerformance(w.get(2));
+                return null;
+            case "list":
+                performanceModule.displayAllPerformance(range(w, 2));
+                return null;
+            case "export":
+                expect(w, 4, "marks export list <file>");
+                listing(w, "list");
+                return ok(performanceModule.displayAllPerformance(export(w)));
+            case "report":
+                performanceModule.generateReport();
+                return null;
+            case "top":
+                expect(w, 3, "marks top <k>");
+                performanceModule.showTopStudents(integer(w.get(2)));
+                return null;
+            case "rank":
+                expect(w, 3, "marks rank <id>");
+                performanceModule.showRank(w.get(2));
+                return null;
+            default:
+                return "unknown marks command";
+        }
+    }
+
+    //  Parsing helpers
+
+    // Words of a line; quoted phrases are one word. Empty for blank and # comment lines
+    static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        int i = 0;
+        int n = line.length();
+        while (true) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) i++;
+            if (i == n || (words.isEmpty() && line.charAt(i) == '#')) return words;
+            StringBuilder word = new StringBuilder();
+            if (line.charAt(i) == '"') {
+                i++;
+                while (i < n) {
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < n && line.charAt(i) == '"') i++;
+                        else break;
+                    }
+                    word.append(c);
+                }
+            } else {
+                while (i < n && !Character.isWhitespace(line.charAt(i))) word.append(line.charAt(i++));
+            }
+            words.add(word.toString());
+        }
+    }
+
+    // All rows, or one page when an offset (and a limit, default Listing.PAGE_ROWS) follows
+    private static Listing.Mode range(List<String> words, int from) {
+        if (words.size() > from + 2) throw usage(words.get(0) + " " + words.get(1) + " [offset [limit]]");
+        if (words.size() == from) return Listing.Mode.ALL;
+        long offset = integer(words.get(from));
+        long limit = words.size() == from + 2 ? integer(words.get(from + 1)) : Listing.PAGE_ROWS;
+        return Listing.Mode.page(offset, limit);
+    }
+
+    // The listing named by "<group> export <listing> <file>"
+    private static String listing(List<String> words, String... names) {
+        String name = words.get(2).toLowerCase(Locale.ROOT);
+        if (!Arrays.asList(names).contains(name)) {
+            throw new IllegalArgumentException("no listing " + words.get(2) + " (" + String.join(", ", names) + ")");
+        }
+        return name;
+    }
+
+    private static Listing.Mode export(List<String> words) {
+        try {
+            return Listing.Mode.export(Paths.get(words.get(3)));
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException("bad file name: " + words.get(3));
+        }
+    }
+
+    private static void expect(List<String> words, int count, String usage) {
+        if (words.size() != count) throw usage(usage);
+    }
+
+    private static IllegalArgumentException usage(String usage) {
+        return new IllegalArgumentException("usage: " + usage);
+    }
+
+    private static double number(String word) {
+        try {
+            double value = Double.parseDouble(word);
+            if (Double.isFinite(value)) return value;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("not a number: " + word);
+    }
+
+    private static int integer(String word) {
+        try {
+            return Integer.parseInt(word);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a whole number: " + word);
+        }
+    }
+
+    private static String ok(boolean success) {
+        return success ? null : "refused";
+    }
+}
@@ -0,0 +1,120 @@
+package mine;
+
+import java.util.*;
+
+// Student-proposing deferred acceptance (Gale-Shapley) over ranked course preferences.
+// Students propose down their lists; a full course keeps its best applicants and
+// rejects the worst one. Every course ranks students the same way: higher priority
+// first, then earlier registration. The result is stable and student-optimal.
+// Each course holds its tentative admits in a heap with the worst applicant on top,
+// so a proposal costs O(log capacity) and the whole run O(total proposals x log capacity).
+class CourseMatcher {
+
+    // Assignment result: course index per student, -1 when unmatched
+    static class Result {
+        int[] courseOf;
+        int matched;
+        int unmatched;
+    }
+
+    // preferences[s] = course indexes in order of preference (may be empty)
+    // priority[s]    = higher wins a contested seat; ties go to the lower student index
+    static Result match(int[] capacity, int[][] preferences, int[] priority) {
+        int students = preferences.length;
+        int courses = capacity.length;
+
+        int[] courseOf = new int[students];
+        Arrays.fill(courseOf, -1);
+        int[] nextChoice = new int[students];
+        Heap[] admitted = new Heap[courses];
+
+        // Stack of students who still have to propose
+        int[] free = new int[students];
+        int freeCount = 0;
+        for (int s = students - 1; s >= 0; s--) {
+            if (preferences[s].length > 0) free[freeCount++] = s;
+        }
+
+        while (freeCount > 0) {
+            int s = free[--freeCount];
+            int[] prefs = preferences[s];
+            while (nextChoice[s] < prefs.length) {
+                int c = prefs[nextChoice[s]++];
+                if (c < 0 || c >= courses || capacity[c] <= 0) continue;
+
+                Heap h = admitted[c];
+                if (h == null) h = admitted[c] = new Heap(priority, Math.min(capacity[c], 16));
+
+                if (h.size < capacity[c]) {
+                    h.push(s);
+                    courseOf[s] = c;
+                    break;
+                }
+                int worst = h.peek();
+                if (h.better(s, worst)) {
+                    h.replaceTop(s);
+                    courseOf[s] = c;
+                    courseOf[worst] = -1;
+                    free[freeCount++] = worst; // rejected student proposes again
+                    break;
+                }
+                // rejected by c: try the next choice
+            }
+        }
+
+        Result r = new Result();
+        r.courseOf = courseOf;
+        for (int c : courseOf) {
+            if (c >= 0) r.matched++;
+        }
+        r.unmatched = students - r.matched;
+        return r;
+    }
+
+    // Binary heap of student indexes, worst-ranked applicant on top
+    private static class Heap {
+        private final int[] priority;
+        private int[] items;
+        int size;
+
+        Heap(int[] priority, int initialCapacity) {
+            this.priority = priority;
+            this.items = new int[Math.max(1, initialCapacity)];
+        }
+
+        // True when student a ranks ahead of student b at every course
+        boolean better(int a, int b) {
+            if (priority[a] != priority[b]) return priority[a] > priority[b];
+            return a < b;
+        }
+
+        int peek() {
+            return items[0];
+        }
+
+        void push(int s) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!better(items[parent], s)) break; // parent is already worse
+                items[i] = items[parent];
+                i = parent;
+            }
+            items[i] = s;
+        }
+
+        void replaceTop(int s) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && better(items[child], items[child + 1])) child++; // pick the worse child
+                if (!better(s, items[child])) break;
+                items[i] = items[child];
+                i = child;
+            }
+            items[i] = s;
+        }
+    }
+}
@@ -1,144 +1,725 @@
-package mine;
-
-import java.util.*;
-
-public class Courses {
-
-    private String[] availableCourses = {
-        "Mathematics", "Java Programming", "Python", "Networks", "Artificial Intelligence"
-    };
-
-    // The maximum capacity constraint is conceptually part of the circular array/queue limits.
-    private final int MAX_CAPACITY = 3; 
-
-    // Data Structure: Course Name (Key) -> List of Assigned Student IDs (Value)
-    // A LinkedHashMap is still required to manage allocations for multiple courses.
-    private Map<String, List<String>> courseAllocations = new LinkedHashMap<>();
-
-    private students studentModule; // shared reference
-
-    public Courses(students studentModule) {
-        this.studentModule = studentModule;
-        // Initialization remains the same
-        for (String course : availableCourses) {
-            courseAllocations.put(course, new ArrayList<>());
-        }
-    }
-
-    // --- (run() method is UNCHANGED as requested) ---
-    public void run() {
-        Scanner input = new Scanner(System.in);
-        int choice = 0;
-
-        do {
-            System.out.println("\n COURSE SCHEDULING ");
-            System.out.println("1. Auto Assign Courses to Students");
-            System.out.println("2. Display Course Allocations");
-            System.out.println("3. Back to Main Menu");
-            System.out.print("Enter choice: ");
-
-            if (!input.hasNextInt()) {
-                System.out.println("Please enter a valid number.");
-                input.nextLine();
-                continue;
-            }
-
-            choice = input.nextInt();
-            input.nextLine();
-
-            switch (choice) {
-                case 1:
-                    autoAssignCourses();
-                    break;
-
-                case 2:
-                    displayAllocations();
-                    break;
-
-                case 3:
-                    System.out.println("Returning to Main Menu...");
-                    break;
-
-                default:
-                    System.out.println("Invalid choice! Try again.");
-            }
-
-        } while (choice != 3);
-    }
-
-    // Auto assign courses considering max capacity
-    public void autoAssignCourses() {
-        List<String> allStudents = (studentModule).getAllStudentIDs();
-
-        if (allStudents == null || allStudents.isEmpty()) {
-            System.out.println("No students registered yet.");
-            return;
-        }
-
-        // Reset old allocations
-        for (String course : availableCourses) {
-            courseAllocations.get(course).clear();
-        }
-
-        int assignedCount = 0;
-        // Start index (conceptually the 'front' of the circular course array)
-        int courseIndex = 0; 
-
-        // Loop through all students who need assigning
-        for (String id : allStudents) {
-            boolean assigned = false;
-            
-            // This starting position is where the circular search begins for the student
-            int startIndex = courseIndex; 
-
-            // Inner loop searches circularly until a free slot is found or all courses are checked
-            do {
-                String currentCourse = availableCourses[courseIndex];
-                List<String> currentList = courseAllocations.get(currentCourse);
-
-                if (currentList.size() < MAX_CAPACITY) {
-                    // Assignment SUCCESS!
-                    currentList.add(id);
-                    assigned = true;
-                    assignedCount++;
-                    
-                    // Move the starting point for the next student assignment
-                    // This implements the 'dequeue/move front' step of a queue/circular array
-                    courseIndex = (courseIndex + 1) % availableCourses.length;
-                    
-                    break; // Exit the inner 'do-while' loop
-                } else {
-                    // Course full → move to the next course in the circle to check capacity
-                    // This implements the circular traversal check
-                    courseIndex = (courseIndex + 1) % availableCourses.length;
-                }
-                
-            // The loop continues as long as we haven't found a spot AND we haven't looped back 
-            // to the starting course index.
-            } while (courseIndex != startIndex);
-
-            if (!assigned) {
-                System.out.println("Could not assign course for student " + id + " (all courses full)");
-            }
-            // If assigned, courseIndex is already incremented and ready for the next student.
-        }
-
-        System.out.println("Auto assignment complete. " + assignedCount + " students assigned to courses.");
-    }
-
-    // --- (displayAllocations() method is UNCHANGED) ---
-    public void displayAllocations() {
-        System.out.println("\nCOURSE ALLOCATIONS (Max per course: " + MAX_CAPACITY + ")");
-        for (String course : availableCourses) {
-            List<String> students = courseAllocations.get(course);
-            System.out.println("\n" + course + " (" + students.size() + "/" + MAX_CAPACITY + "):");
-            if (students.isEmpty()) {
-                System.out.println("  - No students assigned");
-            } else {
-                for (String s : students) {
-                    System.out.println("  • Student ID: " + s);
-                }
-            }
-        }
-    }
-}
\ No newline at end of file
+package mine;
+
+import java.util.*;
+
+public class Courses {
+
+    private String[] availableCourses = {
+        "Mathematics", "Java Programming", "Python", "Networks", "Artificial Intelligence"
+    };
+
+    // Seats per course; each course has its own capacity (new courses start at the default)
+    private final int DEFAULT_CAPACITY = 3;
+    private int[] courseCapacity;
+
+    // Course name -> index into availableCourses / courseCapacity
+    private Map<String, Integer> courseIndex = new HashMap<>();
+
+    // Data Structure: Course Name (Key) -> Roster of Assigned Student IDs (Value)
+    // A LinkedHashMap is still required to manage allocations for multiple courses.
+    // Rosters are LinkedHashSets: assignment order is kept and removal is O(1).
+    private Map<String, Set<String>> courseAllocations = new LinkedHashMap<>();
+
+    // Free-slot allocator: a queue of courses that still have room (O(1) per placement)
+    private SeatAllocator seats;
+
+    // Reverse index: Student ID -> index of the course they are seated in
+    private Map<String, Integer> courseOfStudent = new HashMap<>();
+
+    // Ranked course choices (course indexes, best first) and matching priority per student
+    private Map<String, int[]> coursePreferences = new HashMap<>();
+    private Map<String, Integer> studentPriority = new HashMap<>();
+
+    // Timetabling: weekly sessions per course, the courses each student attends
+    // (when not set, just the course they are seated in) and the last built timetable
+    private final int DEFAULT_SESSIONS = 2;
+    private int[] courseSessions;
+    private Map<String, int[]> courseLoads = new HashMap<>();
+    private Timetable timetable;
+
+    private students studentModule; // shared reference
+
+    // Seat, course and preference changes are reported here (see Persistence)
+    private Persistence.ChangeLog changeLog = Persistence.ChangeLog.NONE;
+
+    public Courses(students studentModule) {
+        this.studentModule = studentModule;
+        // Initialization remains the same
+        courseCapacity = new int[availableCourses.length];
+        courseSessions = new int[availableCourses.length];
+        Arrays.fill(courseSessions, DEFAULT_SESSIONS);
+        for (int c = 0; c < availableCourses.length; c++) {
+            courseAllocations.put(availableCourses[c], new LinkedHashSet<>());
+            courseIndex.put(availableCourses[c], c);
+            courseCapacity[c] = DEFAULT_CAPACITY;
+        }
+        seats = new SeatAllocator(courseCapacity);
+
+        // Free the seat of a deleted student so allocations never hold stale IDs
+        if (studentModule != null) {
+            studentModule.addListener(new students.StudentListener() {
+                public void studentRemoved(String id) {
+                    coursePreferences.remove(id);
+                    studentPriority.remove(id);
+                    courseLoads.remove(id);
+                    unseat(id); // reverse index finds the seat without a scan
+                }
+            });
+        }
+    }
+
+    public void run(Scanner input) {
+        int choice = 0;
+
+        do {
+            System.out.println("\n COURSE SCHEDULING ");
+            System.out.println("1. Auto Assign Courses to Students");
+            System.out.println("2. Assign Unassigned Students Only");
+            System.out.println("3. Submit Course Preferences");
+            System.out.println("4. Run Preference Matching");
+            System.out.println("5. Add Course");
+            System.out.println("6. Set Course Capacity");
+            System.out.println("7. Find Student's Course");
+            System.out.println("8. Drop Student from Course");
+            System.out.println("9. Move Student to Another Course");
+            System.out.println("10. Set Student Course Load (Timetable)");
+            System.out.println("11. Build Timetable");
+            System.out.println("12. Display Course Allocations");
+            System.out.println("13. Back to Main Menu");
+            System.out.print("Enter choice: ");
+
+            if (!input.hasNextInt()) {
+                System.out.println("Please enter a valid number.");
+                input.nextLine();
+                continue;
+            }
+
+            choice = input.nextInt();
+            input.nextLine();
+
+            switch (choice) {
+                case 1:
+                    autoAssignCourses();
+                    break;
+
+                case 2:
+                    assignUnassignedStudents();
+                    break;
+
+                case 3:
+                    submitPreferences(input);
+                    break;
+
+                case 4:
+                    runPreferenceMatching();
+                    break;
+
+                case 5:
+                    addCourse(input);
+                    break;
+
+                case 6:
+                    setCourseCapacity(input);
+                    break;
+
+                case 7:
+                    findStudentCourse(input);
+                    break;
+
+                case 8:
+                    dropStudent(input);
+                    break;
+
+                case 9:
+                    moveStudent(input);
+                    break;
+
+                case 10:
+                    setCourseLoad(input);
+                    break;
+
+                case 11:
+                    buildTimetable();
+                    break;
+
+                case 12:
+                    displayAllocations(Listing.Mode.browse(input));
+                    break;
+
+                case 13:
+                    System.out.println("Returning to Main Menu...");
+                    break;
+
+                default:
+                    System.out.println("Invalid choice! Try again.");
+            }
+
+        } while (choice != 13);
+    }
+
+    // Auto assign courses considering max capacity (clears and redoes every allocation)
+    public void autoAssignCourses() {
+        List<String> allStudents = (studentModule).getAllStudentIDs();
+
+        if (allStudents == null || allStudents.isEmpty()) {
+            System.out.println("No students registered yet.");
+            return;
+        }
+
+        clearSeats();
+
+        int assignedCount = assignAll(allStudents);
+        System.out.println("Auto assignment complete. " + assignedCount + " students assigned to courses.");
+    }
+
+    // Incremental mode: places only students without a seat; existing allocations stay put
+    public void assignUnassignedStudents() {
+        List<String> allStudents = (studentModule).getAllStudentIDs();
+
+        if (allStudents == null || allStudents.isEmpty()) {
+            System.out.println("No students registered yet.");
+            return;
+        }
+
+        List<String> pending = new ArrayList<>();
+        for (String id : allStudents) {
+            if (!courseOfStudent.containsKey(id)) pending.add(id);
+        }
+
+        int assignedCount = assignAll(pending);
+        System.out.println("Incremental assignment complete. " + assignedCount + " new students assigned to courses.");
+    }
+
+    // Round-robin over courses with free seats; the allocator never visits a full course
+    private int assignAll(List<String> ids) {
+        int assignedCount = 0;
+        for (String id : ids) {
+            int course = seats.allocate();
+            if (course < 0) {
+                System.out.println("Could not assign course for student " + id + " (all courses full)");
+                continue;
+            }
+            seat(id, course);
+            assignedCount++;
+        }
+        return assignedCount;
+    }
+
+    //  Preference-based assignment (deferred acceptance)
+
+    private void submitPreferences(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        String id = input.nextLine().trim();
+
+        System.out.println("Courses:");
+        for (int c = 0; c < availableCourses.length; c++) {
+            System.out.println("  " + (c + 1) + ". " + availableCourses[c] + " (capacity " + courseCapacity[c] + ")");
+        }
+        System.out.print("Enter course numbers in order of preference (e.g. 2,5,1): ");
+        String[] parts = input.nextLine().split(",");
+        List<String> ranked = new ArrayList<>();
+        for (String part : parts) {
+            try {
+                int number = Integer.parseInt(part.trim());
+                if (number >= 1 && number <= availableCourses.length) ranked.add(availableCourses[number - 1]);
+            } catch (NumberFormatException e) {
+                // skip entries that are not numbers
+            }
+        }
+
+        System.out.print("Enter priority (higher wins contested seats, blank = 0): ");
+        String priorityText = input.nextLine().trim();
+        int priority = 0;
+        if (!priorityText.isEmpty()) {
+            try {
+                priority = Integer.parseInt(priorityText);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid priority, using 0.");
+            }
+        }
+
+        if (submitPreferences(id, ranked)) setStudentPriority(id, priority);
+    }
+
+    // Stores a student's ranked course choices; unknown or repeated course names are ignored
+    public boolean submitPreferences(String id, List<String> rankedCourses) {
+        if (studentModule == null || !studentModule.isRegistered(id)) {
+            System.out.println("Student not found. Register first in Student Module.");
+            return false;
+        }
+
+        int[] ranked = new int[rankedCourses.size()];
+        int count = 0;
+        Set<Integer> seen = new HashSet<>();
+        for (String name : rankedCourses) {
+            Integer c = courseIndex.get(name);
+            if (c != null && seen.add(c)) ranked[count++] = c;
+        }
+        if (count == 0) {
+            System.out.println("No valid courses given. Preferences not saved.");
+            return false;
+        }
+
+        coursePreferences.put(id, Arrays.copyOf(ranked, count));
+        changeLog.record(courseListRecord("prefs", id, coursePreferences.get(id)));
+        System.out.println("Preferences saved for " + id + " (" + count + " choices).");
+        return true;
+    }
+
+    public void setStudentPriority(String id, int priority) {
+        studentPriority.put(id, priority);
+        changeLog.record("course", "priority", id, Integer.toString(priority));
+    }
+
+    // Replaces all allocations with a stable matching of students to their ranked choices
+    public void runPreferenceMatching() {
+        List<String> allStudents = (studentModule).getAllStudentIDs();
+
+        if (allStudents == null || allStudents.isEmpty()) {
+            System.out.println("No students registered yet.");
+            return;
+        }
+
+        // Students are numbered in registration order, which also breaks priority ties
+        int n = allStudents.size();
+        int[][] prefs = new int[n][];
+        int[] priority = new int[n];
+        int withoutPreferences = 0;
+        for (int s = 0; s < n; s++) {
+            String id = allStudents.get(s);
+            int[] ranked = coursePreferences.get(id);
+            prefs[s] = ranked != null ? ranked : new int[0];
+            if (ranked == null) withoutPreferences++;
+            priority[s] = studentPriority.getOrDefault(id, 0);
+        }
+
+        CourseMatcher.Result result = CourseMatcher.match(courseCapacity, prefs, priority);
+
+        clearSeats();
+        List<String> unmatched = new ArrayList<>();
+        for (int s = 0; s < n; s++) {
+            String id = allStudents.get(s);
+            int c = result.courseOf[s];
+            if (c >= 0) {
+                seat(id, c);
+            } else if (prefs[s].length > 0) {
+                unmatched.add(id);
+            }
+        }
+        rebuildSeats();
+
+        System.out.println("Preference matching complete. " + result.matched + " students matched.");
+        System.out.println("Students without preferences (not placed): " + withoutPreferences);
+        System.out.println("Unmatched students (all ranked courses full): " + unmatched.size());
+        for (String id : unmatched) {
+            System.out.println("  - " + id);
+        }
+    }
+
+    //  Course catalogue and capacities
+
+    private void addCourse(Scanner input) {
+        System.out.print("Enter Course Name: ");
+        String name = input.nextLine().trim();
+        System.out.print("Enter Capacity: ");
+        if (!input.hasNextInt()) {
+            System.out.println("Invalid capacity.");
+            input.nextLine();
+            return;
+        }
+        int capacity = input.nextInt();
+        input.nextLine();
+        addCourse(name, capacity);
+    }
+
+    public boolean addCourse(String name, int capacity) {
+        if (name == null || name.isEmpty() || courseIndex.containsKey(name) || capacity < 0) {
+            System.out.println("Invalid or duplicate course. Course not added.");
+            return false;
+        }
+
+        appendCourse(name, capacity);
+        changeLog.record("course", "add", name, Integer.toString(capacity));
+        System.out.println("Course added: " + name + " (capacity " + capacity + ")");
+        return true;
+    }
+
+    private void appendCourse(String name, int capacity) {
+        int c = availableCourses.length;
+        availableCourses = Arrays.copyOf(availableCourses, c + 1);
+        courseCapacity = Arrays.copyOf(courseCapacity, c + 1);
+        courseSessions = Arrays.copyOf(courseSessions, c + 1);
+        courseSessions[c] = DEFAULT_SESSIONS;
+        availableCourses[c] = name;
+        courseCapacity[c] = capacity;
+        courseIndex.put(name, c);
+        courseAllocations.put(name, new LinkedHashSet<>());
+        rebuildSeats();
+    }
+
+    private void setCourseCapacity(Scanner input) {
+        System.out.print("Enter Course Name: ");
+        String name = input.nextLine().trim();
+        System.out.print("Enter New Capacity: ");
+        if (!input.hasNextInt()) {
+            System.out.println("Invalid capacity.");
+            input.nextLine();
+            return;
+        }
+        int capacity = input.nextInt();
+        input.nextLine();
+        setCourseCapacity(name, capacity);
+    }
+
+    // Students already seated keep their seats even if the new capacity is lower
+    public boolean setCourseCapacity(String name, int capacity) {
+        Integer c = courseIndex.get(name);
+        if (c == null || capacity < 0) {
+            System.out.println("Course not found or invalid capacity.");
+            return false;
+        }
+        courseCapacity[c] = capacity;
+        rebuildSeats();
+        changeLog.record("course", "capacity", name, Integer.toString(capacity));
+        System.out.println("Capacity of " + name + " set to " + capacity);
+        return true;
+    }
+
+    // New allocator for the current capacities, with existing seats claimed
+    private void rebuildSeats() {
+        seats = new SeatAllocator(courseCapacity);
+        for (int c = 0; c < availableCourses.length; c++) {
+            int taken = courseAllocations.get(availableCourses[c]).size();
+            for (int i = 0; i < taken; i++) seats.claim(c);
+        }
+    }
+
+    //  Per-student seat operations (O(1) through the reverse index)
+
+    // Adds a student to a course roster (allocator bookkeeping is up to the caller)
+    private void seat(String id, int course) {
+        courseAllocations.get(availableCourses[course]).add(id);
+        courseOfStudent.put(id, course);
+        changeLog.record("course", "seat", id, availableCourses[course]);
+    }
+
+    // Removes a student's seat and returns it to the allocator; false if they had none
+    private boolean unseat(String id) {
+        Integer c = courseOfStudent.remove(id);
+        if (c == null) return false;
+        courseAllocations.get(availableCourses[c]).remove(id);
+        seats.release(c); // course re-opens for the allocator
+        changeLog.record("course", "unseat", id);
+        return true;
+    }
+
+    // Empties every roster and the allocator
+    private void clearSeats() {
+        for (Set<String> roster : courseAllocations.values()) roster.clear();
+        courseOfStudent.clear();
+        seats.reset();
+        changeLog.record("course", "clear");
+    }
+
+    // Course a student is seated in, or null
+    public String courseOf(String id) {
+        Integer c = courseOfStudent.get(id);
+        return c == null ? null : availableCourses[c];
+    }
+
+    public boolean dropStudent(String id) {
+        if (!unseat(id)) {
+            System.out.println("Student " + id + " is not assigned to any course.");
+            return false;
+        }
+        System.out.println("Student " + id + " dropped from their course.");
+        return true;
+    }
+
+    // Moves (or first assigns) a student into a course that has a free seat
+    public boolean moveStudent(String id, String course) {
+        Integer target = courseIndex.get(course);
+        if (target == null) {
+            System.out.println("Course not found.");
+            return false;
+        }
+        if (studentModule == null || !studentModule.isRegistered(id)) {
+            System.out.println("Student not found. Register first in Student Module.");
+            return false;
+        }
+        Integer current = courseOfStudent.get(id);
+        if (current != null && current.equals(target)) {
+            System.out.println("Student " + id + " is already in " + course + ".");
+            return false;
+        }
+        if (seats.used(target) >= seats.capacity(target)) {
+            System.out.println(course + " is full.");
+            return false;
+        }
+
+        unseat(id);
+        seats.claim(target);
+        seat(id, target);
+        System.out.println("Student " + id + " moved to " + course + ".");
+        return true;
+    }
+
+    private void findStudentCourse(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        findStudentCourse(input.nextLine().trim());
+    }
+
+    public void findStudentCourse(String id) {
+        String course = courseOf(id);
+        if (course == null) System.out.println("Student " + id + " is not assigned to any course.");
+        else System.out.println("Student " + id + " is in " + course + ".");
+    }
+
+    private void dropStudent(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        dropStudent(input.nextLine().trim());
+    }
+
+    private void moveStudent(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        String id = input.nextLine().trim();
+        System.out.print("Enter Target Course Name: ");
+        moveStudent(id, input.nextLine().trim());
+    }
+
+    //  Timetable
+
+    private void setCourseLoad(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        String id = input.nextLine().trim();
+        System.out.print("Enter course names the student attends, separated by commas: ");
+        List<String> names = new ArrayList<>();
+        for (String part : input.nextLine().split(",")) {
+            if (!part.trim().isEmpty()) names.add(part.trim());
+        }
+        setCourseLoad(id, names);
+    }
+
+    // Courses a student attends in the week; unknown names are ignored
+    public boolean setCourseLoad(String id, List<String> courses) {
+        if (studentModule == null || !studentModule.isRegistered(id)) {
+            System.out.println("Student not found. Register first in Student Module.");
+            return false;
+        }
+        Set<Integer> load = new LinkedHashSet<>();
+        for (String name : courses) {
+            Integer c = courseIndex.get(name);
+            if (c != null) load.add(c);
+        }
+        int[] courseIds = new int[load.size()];
+        int i = 0;
+        for (int c : load) courseIds[i++] = c;
+        courseLoads.put(id, courseIds);
+        changeLog.record(courseListRecord("load", id, courseIds));
+        System.out.println("Course load saved for " + id + " (" + courseIds.length + " courses).");
+        return true;
+    }
+
+    public void setCourseSessions(String course, int sessionsPerWeek) {
+        Integer c = courseIndex.get(course);
+        if (c == null || sessionsPerWeek <= 0) return;
+        courseSessions[c] = sessionsPerWeek;
+        changeLog.record("course", "sessions", course, Integer.toString(sessionsPerWeek));
+    }
+
+    // Schedules every course into weekly slots so students are not double-booked
+    public void buildTimetable() {
+        timetable = new Timetable(courseSessions);
+        Set<String> counted = new HashSet<>();
+        for (Map.Entry<String, int[]> e : courseLoads.entrySet()) {
+            timetable.addStudentLoad(e.getValue());
+            counted.add(e.getKey());
+        }
+        for (Map.Entry<String, Integer> e : courseOfStudent.entrySet()) {
+            if (!counted.contains(e.getKey())) timetable.addStudentLoad(new int[]{e.getValue()});
+        }
+
+        long clashes = timetable.schedule();
+
+        System.out.println("\nTIMETABLE (" + Timetable.DAYS + " days x " + Timetable.PERIODS_PER_DAY + " periods)");
+        for (int c = 0; c < availableCourses.length; c++) {
+            System.out.println(availableCourses[c] + ": " + timetable.describe(c));
+        }
+        if (clashes == 0) {
+            System.out.println("No student has overlapping sessions.");
+        } else {
+            System.out.println("Clashes left: " + clashes + " session overlaps for "
+                + timetable.studentsWithClashes() + " students (not enough free slots).");
+        }
+    }
+
+    // Overlapping sessions for one student in the last built timetable (-1 if none built)
+    public int clashesFor(String id) {
+        if (timetable == null) return -1;
+        int[] load = courseLoads.get(id);
+        if (load == null) return 0; // a single seated course cannot clash with itself
+        return timetable.clashesFor(load);
+    }
+
+    public void displayAllocations() {
+        displayAllocations(Listing.Mode.ALL);
+    }
+
+    // False only if an export failed
+    boolean displayAllocations(Listing.Mode mode) {
+        System.out.println("\nCOURSE ALLOCATIONS");
+        return Listing.show(this::allocationRows, mode);
+    }
+
+    // Per course: a blank row, the heading and one row per seated student (or "No students assigned")
+    private Listing.Rows allocationRows() {
+        long lines = 0;
+        for (String course : availableCourses) lines += 2 + Math.max(1, courseAllocations.get(course).size());
+        long size = lines;
+        return new Listing.Rows() {
+            private int c = -1;
+            private boolean blank;
+            private boolean heading;
+            private Iterator<String> members;   // null once the course has no more rows
+            private String member;              // null on a heading or the "none" row
+
+            public long size() {
+                return size;
+            }
+
+            public boolean next() {
+                if (blank) {
+                    blank = false;
+                    heading = true;
+                    return true;
+                }
+                if (heading) {
+                    heading = false;
+                    members = courseAllocations.get(availableCourses[c]).iterator();
+                    member = members.hasNext() ? members.next() : null;
+                    if (member == null) members = null;
+                    return true;
+                }
+                if (members != null && members.hasNext()) {
+                    member = members.next();
+                    return true;
+                }
+                if (c + 1 >= availableCourses.length) return false;
+                c++;
+                blank = true;
+                members = null;
+                return true;
+            }
+
+            public void format(Listing out) {
+                if (blank) return; // just the line break
+                if (heading) {
+                    out.text(availableCourses[c]).text(" (").number(courseAllocations.get(availableCourses[c]).size())
+                        .text('/').number(courseCapacity[c]).text("):");
+                } else if (member == null) {
+                    out.text("  - No students assigned");
+                } else {
+                    out.text("  • Student ID: ").text(member);
+                }
+            }
+        };
+    }
+
+    //  Persistence (records: course add|capacity|sessions|clear|seat|unseat|prefs|priority|load)
+
+    void setChangeLog(Persistence.ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    // Applies a logged change quietly (the change log ignores records made during replay)
+    void replay(String[] record) {
+        switch (record[1]) {
+            case "add": {
+                Integer c = courseIndex.get(record[2]);
+                int capacity = Integer.parseInt(record[3]);
+                if (c == null) {
+                    appendCourse(record[2], capacity);
+                } else {
+                    courseCapacity[c] = capacity;
+                    rebuildSeats();
+                }
+                break;
+            }
+            case "capacity": {
+                Integer c = courseIndex.get(record[2]);
+                if (c == null) return;
+                courseCapacity[c] = Integer.parseInt(record[3]);
+                rebuildSeats();
+                break;
+            }
+            case "sessions":
+                setCourseSessions(record[2], Integer.parseInt(record[3]));
+                break;
+            case "clear":
+                clearSeats();
+                break;
+            case "seat": {
+                Integer c = courseIndex.get(record[3]);
+                if (c == null || c.equals(courseOfStudent.get(record[2]))) return;
+                unseat(record[2]);
+                seats.claim(c);
+                seat(record[2], c);
+                break;
+            }
+            case "unseat":
+                unseat(record[2]);
+                break;
+            case "prefs":
+                coursePreferences.put(record[2], courseIndexes(record));
+                break;
+            case "priority":
+                studentPriority.put(record[2], Integer.parseInt(record[3]));
+                break;
+            case "load":
+                courseLoads.put(record[2], courseIndexes(record));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown operation " + record[1]);
+        }
+    }
+
+    // Courses, then rosters in seating order, then preferences, priorities and loads
+    void snapshot(Persistence.ChangeLog out) {
+        for (int c = 0; c < availableCourses.length; c++) {
+            out.record("course", "add", availableCourses[c], Integer.toString(courseCapacity[c]));
+            out.record("course", "sessions", availableCourses[c], Integer.toString(courseSessions[c]));
+        }
+        for (Map.Entry<String, Set<String>> roster : courseAllocations.entrySet()) {
+            for (String id : roster.getValue()) out.record("course", "seat", id, roster.getKey());
+        }
+        for (Map.Entry<String, int[]> e : coursePreferences.entrySet()) {
+            out.record(courseListRecord("prefs", e.getKey(), e.getValue()));
+        }
+        for (Map.Entry<String, Integer> e : studentPriority.entrySet()) {
+            out.record("course", "priority", e.getKey(), Integer.toString(e.getValue()));
+        }
+        for (Map.Entry<String, int[]> e : courseLoads.entrySet()) {
+            out.record(courseListRecord("load", e.getKey(), e.getValue()));
+        }
+    }
+
+    // course <op> <id> <course name>...
+    private String[] courseListRecord(String op, String id, int[] courses) {
+        String[] record = new String[3 + courses.length];
+        record[0] = "course";
+        record[1] = op;
+        record[2] = id;
+        for (int i = 0; i < courses.length; i++) record[3 + i] = availableCourses[courses[i]];
+        return record;
+    }
+
+    private int[] courseIndexes(String[] record) {
+        int[] courses = new int[record.length - 3];
+        int count = 0;
+        for (int i = 3; i < record.length; i++) {
+            Integer c = courseIndex.get(record[i]);
+            if (c != null) courses[count++] = c;
+        }
+        return Arrays.copyOf(courses, count);
+    }
+}
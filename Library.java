@@ -1,217 +1,881 @@
-package mine;
-
-import java.util.*;
-
-public class Library {
-
-    // HashMap: ISBN → Book Object
-    private Map<String, Book> books = new HashMap<>();
-
-    // Stack: track borrow and return history
-    private Stack<String> history = new Stack<>();
-
-    private students studentModule; // shared student data
-
-    // Constructor to connect student module
-    public Library(students studentModule) {
-        this.studentModule = studentModule;
-        preloadBooks(); // Add some books initially
-    }
-
-    // Default constructor (for testing, can be removed if not needed)
-    public Library() {
-        preloadBooks();
-    }
-
-    // books in the system
-    private void preloadBooks() {
-        books.put("9780134685991", new Book("Effective Java", "Joshua Bloch"));
-        books.put("9780596009205", new Book("Head First Java", "Kathy Sierra"));
-        books.put("9780132350884", new Book("Clean Code", "Robert C. Martin"));
-        books.put("9780134494166", new Book("Core Java Volume I", "Cay Horstmann"));
-        books.put("9780596007126", new Book("Java in a Nutshell", "David Flanagan"));
-        books.put("9780131872486", new Book("Java How to Program", "Paul Deitel"));
-        books.put("9781617294945", new Book("Spring in Action", "Craig Walls"));
-        books.put("9780136019701", new Book("Introduction to Algorithms", "Thomas H. Cormen"));
-        books.put("9781492056270", new Book("Learning Java", "Patrick Niemeyer"));
-        books.put("9780596007737", new Book("Java Cookbook", "Ian F. Darwin"));
-        books.put("9780134177304", new Book("Android Programming: The Big Nerd Ranch Guide", "Bill Phillips"));
-        books.put("9781491900864", new Book("Head First Design Patterns", "Eric Freeman"));
-        books.put("9780134694726", new Book("Core Java Volume II - Advanced Features", "Cay Horstmann"));
-        books.put("9780134757599", new Book("Effective Modern Java", "Joshua Bloch"));
-        books.put("9780321356680", new Book("Refactoring: Improving the Design of Existing Code", "Martin Fowler"));
-        books.put("9781492072508", new Book("Programming Kotlin", "Venkat Subramaniam"));
-        books.put("9781617294944", new Book("Spring Boot in Action", "Craig Walls"));
-        books.put("9780133069983", new Book("Data Structures and Algorithms in Java", "Michael T. Goodrich"));
-        books.put("9780134802213", new Book("Java Concurrency in Practice", "Brian Goetz"));
-        books.put("9780137081073", new Book("Test-Driven Development by Example", "Kent Beck"));
-    }
-
-
-    public void run() {
-        Scanner input = new Scanner(System.in);
-        int choice = 0;
-
-        do {
-            System.out.println("\n--- LIBRARY MANAGEMENT ---");
-            System.out.println("1. Borrow a Book");
-            System.out.println("2. Return a Book");
-            System.out.println("3. Show Available Books");
-            System.out.println("4. Show Borrowed Books");
-            System.out.println("5. Show Borrow/Return History");
-            System.out.println("6. Back to Main Menu");
-            System.out.print("Enter your choice: ");
-
-            if (!input.hasNextInt()) {
-                System.out.println("⚠️ Please enter a number.");
-                input.nextLine();
-                continue;
-            }
-
-            choice = input.nextInt();
-            input.nextLine();
-
-            switch (choice) {
-                case 1:
-                    borrowBook(input);
-                    break;
-                case 2:
-                    returnBook(input);
-                    break;
-                case 3:
-                    showAvailableBooks();
-                    break;
-                case 4:
-                    showBorrowedBooks();
-                    break;
-                case 5:
-                    showHistory();
-                    break;
-                case 6:
-                    System.out.println("Returning to Main Menu...");
-                    break;
-                default:
-                    System.out.println("Invalid choice! Try again.");
-            }
-
-        } while (choice != 6);
-    }
-
-    // Borrow book
-    private void borrowBook(Scanner input) {
-        System.out.print("Enter Student ID: ");
-        String studentId = input.nextLine().trim();
-
-        if (!isStudentRegistered(studentId)) {
-            System.out.println("Student not found. Register first in Student Module.");
-            return;
-        }
-
-        System.out.print("Enter Book ISBN to Borrow: ");
-        String isbn = input.nextLine().trim();
-
-        if (!books.containsKey(isbn)) {
-            System.out.println("Book not found in library.");
-            return;
-        }
-
-        Book book = books.get(isbn);
-        if (book.isBorrowed) {
-            System.out.println("Book already borrowed by " + book.borrowedBy);
-        } else {
-            book.isBorrowed = true;
-            book.borrowedBy = studentId;
-            history.push("Borrowed: " + book.title + " by " + studentId);
-            System.out.println("Book '" + book.title + "' successfully borrowed by " + studentId);
-        }
-    }
-
-    // Return book
-    private void returnBook(Scanner input) {
-        System.out.print("Enter Book ISBN to Return: ");
-        String isbn = input.nextLine().trim();
-
-        if (!books.containsKey(isbn)) {
-            System.out.println(" Book not found in library.");
-            return;
-        }
-
-        Book book = books.get(isbn);
-        if (!book.isBorrowed) {
-            System.out.println("Book is already available in the library.");
-        } else {
-            history.push("Returned: " + book.title + " by " + book.borrowedBy);
-            System.out.println(" Book '" + book.title + "' returned by " + book.borrowedBy);
-            book.isBorrowed = false;
-            book.borrowedBy = null;
-        }
-    }
-
-    // Show all available books
-    private void showAvailableBooks() {
-        System.out.println("\n AVAILABLE BOOKS:");
-        for (Book book : books.values()) {
-            if (!book.isBorrowed) {
-                System.out.println(book);
-            }
-        }
-    }
-
-    // 📕 Show borrowed books and who borrowed them
-    private void showBorrowedBooks() {
-        System.out.println("\n BORROWED BOOKS:");
-        boolean found = false;
-        for (Book book : books.values()) {
-            if (book.isBorrowed) {
-                System.out.println(book + " → Borrowed by: " + book.borrowedBy);
-                found = true;
-            }
-        }
-        if (!found) {
-            System.out.println("No borrowed books right now.");
-        }
-    }
-
-    // Show recent borrow/return history (Stack)
-    private void showHistory() {
-        System.out.println("\n📜 BORROW/RETURN HISTORY:");
-        if (history.isEmpty()) {
-            System.out.println("No activity yet.");
-        } else {
-            Stack<String> temp = (Stack<String>) history.clone();
-            while (!temp.isEmpty()) {
-                System.out.println(temp.pop());
-            }
-        }
-    }
-
-    // Check if a student exists in the student module
-    private boolean isStudentRegistered(String id) {
-        if (studentModule == null) return false;
-        List<Map<String, Object>> data = studentModule.getFeeData(); // reuse to get IDs
-        for (Map<String, Object> entry : data) {
-            if (entry.get("id").equals(id)) return true;
-        }
-        return false;
-    }
-
-    // Inner Book class 
-    private static class Book {
-        String isbn;
-        String title;
-        String author;
-        boolean isBorrowed;
-        String borrowedBy;
-
-        Book(String title, String author) {
-            this.title = title;
-            this.author = author;
-            this.isBorrowed = false;
-        }
-
-        @Override
-        public String toString() {
-            return title + " by " + author;
-        }
-    }
-}
+package mine;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+public class Library {
+
+    // ConcurrentHashMap: ISBN → Book Object (several desks may borrow at once)
+    private Map<String, Book> books = new ConcurrentHashMap<>();
+
+    // Ring buffer: bounded borrow/return history, newest first (older events can spill to a file)
+    private static final int HISTORY_CAPACITY = 1000;
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private LoanJournal history = new LoanJournal(HISTORY_CAPACITY);
+
+    // Loan indexes, updated on every borrow/return so listings cost O(result), not O(catalogue)
+    private Set<String> availableIsbns = ConcurrentHashMap.newKeySet();
+    private Set<String> borrowedIsbns = ConcurrentHashMap.newKeySet();
+    private Map<String, Set<String>> loansByStudent = new ConcurrentHashMap<>(); // Student ID -> ISBNs
+    private Map<String, Set<String>> reservationsByStudent = new ConcurrentHashMap<>(); // Student ID -> waitlisted ISBNs
+
+    // Due dates: loans sit in a timing wheel (1-hour ticks, 512 buckets ~ 21 days) until
+    // they fall due, then move to the overdue set
+    private static final long HOUR = 60L * 60 * 1000;
+    private static final long LOAN_PERIOD = 14 * 24 * HOUR;
+    private final LongSupplier clock;
+    private final TimingWheel dueDates;
+    private Set<Loan> overdueLoans = ConcurrentHashMap.newKeySet();
+
+    // Title/author search (inverted index + prefix trie), extended as books are added
+    private static final int SEARCH_RESULTS = 10;
+    private CatalogueIndex catalogueIndex = new CatalogueIndex();
+
+    private students studentModule; // shared student data
+
+    // Loan, copy and waitlist changes are reported here (see Persistence)
+    private Persistence.ChangeLog changeLog = Persistence.ChangeLog.NONE;
+    private final Map<String, String[]> catalogueFiles = new LinkedHashMap<>(); // loaded after startup, in order: path -> size, checksum
+
+    // Constructor to connect student module
+    public Library(students studentModule) {
+        this(studentModule, null);
+    }
+
+    // Loads the catalogue from a CSV/TSV file (in parallel); the sample books are used when no file is given
+    public Library(students studentModule, String cataloguePath) {
+        this(studentModule, cataloguePath, true, System::currentTimeMillis);
+    }
+
+    // Clock is injectable so due dates can be exercised without waiting two weeks
+    Library(students studentModule, String cataloguePath, boolean parallel, LongSupplier clock) {
+        this.studentModule = studentModule;
+        this.clock = clock;
+        this.dueDates = new TimingWheel(HOUR, 512, clock.getAsLong());
+        if (cataloguePath == null || !readCatalogue(cataloguePath, parallel, true)) {
+            preloadBooks(); // Add some books initially
+        }
+
+        // A deleted student leaves every waitlist and their loans are closed, so no copy
+        // stays lent to a stale ID (returned copies go to the next student waiting)
+        if (studentModule != null) {
+            studentModule.addListener(new students.StudentListener() {
+                public void studentRemoved(String id) {
+                    Set<String> reserved = reservationsByStudent.remove(id);
+                    if (reserved != null) {
+                        for (String isbn : reserved) {
+                            Book book = books.get(isbn);
+                            synchronized (book) {
+                                if (book.waitlist.remove(id)) changeLog.record("library", "unreserve", isbn, id);
+                            }
+                        }
+                    }
+                    Set<String> loans = loansByStudent.get(id);
+                    if (loans == null) return;
+                    for (String isbn : new ArrayList<>(loans)) {
+                        closeLoan(books.get(isbn), id, LoanJournal.RETURNED_STUDENT_REMOVED);
+                    }
+                    loansByStudent.remove(id);
+                }
+            });
+        }
+    }
+
+    // Default constructor (for testing, can be removed if not needed)
+    public Library() {
+        this.clock = System::currentTimeMillis;
+        this.dueDates = new TimingWheel(HOUR, 512, clock.getAsLong());
+        preloadBooks();
+    }
+
+    // Adds a book to the catalogue; new books start on the shelf. False if the ISBN exists
+    private boolean addBook(Book book) {
+        if (books.putIfAbsent(book.isbn, book) != null) return false;
+        availableIsbns.add(book.isbn);
+        catalogueIndex.add(book.isbn, book.title, book.author);
+        return true;
+    }
+
+    // Bulk-loads a CSV/TSV catalogue (isbn, title, author) through a memory-mapped file.
+    // Loads after startup are logged by path, size and checksum and read again on
+    // recovery, so loans and waitlists on their books survive a restart (the file has
+    // to stay where it is, unchanged)
+    public boolean loadCatalogue(String path, boolean parallel) {
+        return loadCatalogue(path, parallel, null);
+    }
+
+    // expected: size and checksum from the log, or null for a new load
+    private boolean loadCatalogue(String path, boolean parallel, String[] expected) {
+        String file = Paths.get(path).toAbsolutePath().toString();
+        String[] stamp;
+        try {
+            stamp = CatalogueLoader.stamp(Paths.get(file));
+        } catch (IOException e) {
+            System.out.println("Could not load catalogue: " + e.getMessage());
+            return false;
+        }
+        if (expected != null && !Arrays.equals(stamp, expected)) {
+            System.out.println("Catalogue " + file + " has changed since it was loaded (" + stamp[0] + " bytes, checksum "
+                + stamp[1] + "; logged " + expected[0] + " bytes, checksum " + expected[1] + "). Not loading it.");
+            return false;
+        }
+        if (!readCatalogue(path, parallel, false)) return false;
+        synchronized (catalogueFiles) {
+            catalogueFiles.put(file, stamp);
+        }
+        changeLog.record("library", "catalogue", file, stamp[0], stamp[1]);
+        return true;
+    }
+
+    // The startup catalogue (-Dlibrary.catalogue) is read on every start and not logged.
+    // Only then (atStartup) are the maps presized: nothing else can see them yet
+    private boolean readCatalogue(String path, boolean parallel, boolean atStartup) {
+        try {
+            CatalogueLoader.Result r = CatalogueLoader.load(Paths.get(path), parallel, new CatalogueLoader.Sink() {
+                public void expect(long records) {
+                    if (atStartup) reserveCapacity(records);
+                }
+
+                public boolean add(String isbn, String title, String author) {
+                    return addBook(new Book(isbn, title, author));
+                }
+            });
+            double mb = r.bytes / (1024.0 * 1024.0);
+            System.out.println(String.format("Loaded %,d books from %s in %d ms (%.1f MB, %.1f MB/s, %d thread%s)",
+                r.loaded, path, r.millis, mb, mb * 1000 / Math.max(1, r.millis), r.threads, r.threads == 1 ? "" : "s"));
+            if (r.duplicates > 0 || r.malformed > 0) {
+                System.out.println(String.format("Skipped %,d duplicate ISBNs and %,d malformed lines", r.duplicates, r.malformed));
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not load catalogue: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Re-creates the ISBN maps sized for the expected number of extra books, so a large
+    // load never rehashes. Constructor only: a desk thread working on the old maps
+    // during the swap would lose its change. Later loads let the maps grow in place
+    private void reserveCapacity(long extra) {
+        int target = (int) Math.min(Integer.MAX_VALUE - 8, books.size() + extra);
+        Map<String, Book> sizedBooks = new ConcurrentHashMap<>(target);
+        sizedBooks.putAll(books);
+        books = sizedBooks;
+        Set<String> sizedAvailable = ConcurrentHashMap.newKeySet(target);
+        sizedAvailable.addAll(availableIsbns);
+        availableIsbns = sizedAvailable;
+    }
+
+    // books in the system
+    private void preloadBooks() {
+        addBook(new Book("9780134685991", "Effective Java", "Joshua Bloch"));
+        addBook(new Book("9780596009205", "Head First Java", "Kathy Sierra"));
+        addBook(new Book("9780132350884", "Clean Code", "Robert C. Martin"));
+        addBook(new Book("9780134494166", "Core Java Volume I", "Cay Horstmann"));
+        addBook(new Book("9780596007126", "Java in a Nutshell", "David Flanagan"));
+        addBook(new Book("9780131872486", "Java How to Program", "Paul Deitel"));
+        addBook(new Book("9781617294945", "Spring in Action", "Craig Walls"));
+        addBook(new Book("9780136019701", "Introduction to Algorithms", "Thomas H. Cormen"));
+        addBook(new Book("9781492056270", "Learning Java", "Patrick Niemeyer"));
+        addBook(new Book("9780596007737", "Java Cookbook", "Ian F. Darwin"));
+        addBook(new Book("9780134177304", "Android Programming: The Big Nerd Ranch Guide", "Bill Phillips"));
+        addBook(new Book("9781491900864", "Head First Design Patterns", "Eric Freeman"));
+        addBook(new Book("9780134694726", "Core Java Volume II - Advanced Features", "Cay Horstmann"));
+        addBook(new Book("9780134757599", "Effective Modern Java", "Joshua Bloch"));
+        addBook(new Book("9780321356680", "Refactoring: Improving the Design of Existing Code", "Martin Fowler"));
+        addBook(new Book("9781492072508", "Programming Kotlin", "Venkat Subramaniam"));
+        addBook(new Book("9781617294944", "Spring Boot in Action", "Craig Walls"));
+        addBook(new Book("9780133069983", "Data Structures and Algorithms in Java", "Michael T. Goodrich"));
+        addBook(new Book("9780134802213", "Java Concurrency in Practice", "Brian Goetz"));
+        addBook(new Book("9780137081073", "Test-Driven Development by Example", "Kent Beck"));
+    }
+
+
+    public void run(Scanner input) {
+        int choice = 0;
+
+        do {
+            System.out.println("\n--- LIBRARY MANAGEMENT ---");
+            System.out.println("1. Borrow a Book");
+            System.out.println("2. Return a Book");
+            System.out.println("3. Show Available Books");
+            System.out.println("4. Show Borrowed Books");
+            System.out.println("5. Show a Student's Loans");
+            System.out.println("6. Show Borrow/Return History");
+            System.out.println("7. Set History Overflow Log File");
+            System.out.println("8. Search Catalogue");
+            System.out.println("9. Load Catalogue File");
+            System.out.println("10. Reserve a Book (join waitlist)");
+            System.out.println("11. Add Copies of a Book");
+            System.out.println("12. Show Overdue Loans");
+            System.out.println("13. Back to Main Menu");
+            System.out.print("Enter your choice: ");
+
+            if (!input.hasNextInt()) {
+                System.out.println("⚠️ Please enter a number.");
+                input.nextLine();
+                continue;
+            }
+
+            choice = input.nextInt();
+            input.nextLine();
+
+            switch (choice) {
+                case 1:
+                    borrowBook(input);
+                    break;
+                case 2:
+                    returnBook(input);
+                    break;
+                case 3:
+                    showAvailableBooks(Listing.Mode.browse(input));
+                    break;
+                case 4:
+                    showBorrowedBooks(Listing.Mode.browse(input));
+                    break;
+                case 5:
+                    System.out.print("Enter Student ID: ");
+                    showStudentLoans(input.nextLine().trim());
+                    break;
+                case 6:
+                    showHistory(input);
+                    break;
+                case 7:
+                    System.out.print("Enter log file path: ");
+                    setHistoryLog(input.nextLine().trim());
+                    break;
+                case 8:
+                    System.out.print("Search title/author: ");
+                    showSearchResults(input.nextLine());
+                    break;
+                case 9:
+                    System.out.print("Enter catalogue file path (CSV or TSV): ");
+                    String path = input.nextLine().trim();
+                    System.out.print("Parse in parallel? (y/n): ");
+                    loadCatalogue(path, input.nextLine().trim().equalsIgnoreCase("y"));
+                    break;
+                case 10:
+                    reserveBook(input);
+                    break;
+                case 11:
+                    addCopies(input);
+                    break;
+                case 12:
+                    showOverdueLoans(Listing.Mode.browse(input));
+                    break;
+                case 13:
+                    flushHistory();
+                    System.out.println("Returning to Main Menu...");
+                    break;
+                default:
+                    System.out.println("Invalid choice! Try again.");
+            }
+
+        } while (choice != 13);
+    }
+
+    // Borrow book
+    private void borrowBook(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        String studentId = input.nextLine().trim();
+
+        if (!isStudentRegistered(studentId)) {
+            System.out.println("Student not found. Register first in Student Module.");
+            return;
+        }
+
+        System.out.print("Enter Book ISBN to Borrow: ");
+        String isbn = input.nextLine().trim();
+        borrowBook(studentId, isbn);
+    }
+
+    // Atomic borrow: copies change hands under the book's own lock, so two desks can
+    // never lend more copies than exist and different books never contend
+    public boolean borrowBook(String studentId, String isbn) {
+        if (!isStudentRegistered(studentId)) {
+            System.out.println("Student not found. Register first in Student Module.");
+            return false;
+        }
+
+        Book book = books.get(isbn);
+        if (book == null) {
+            System.out.println("Book not found in library.");
+            return false;
+        }
+
+        Loan loan;
+        synchronized (book) {
+            if (book.loans.containsKey(studentId)) {
+                System.out.println(studentId + " already has a copy of '" + book.title + "'.");
+                return false;
+            }
+            loan = openLoan(book, studentId);
+        }
+        if (loan == null) {
+            System.out.println("All copies of '" + book.title + "' are out. Reserve it to join the waitlist.");
+            return false;
+        }
+        System.out.println("Book '" + book.title + "' successfully borrowed by " + studentId
+            + ", due " + new Date(loan.deadline));
+        return true;
+    }
+
+    // Return book
+    private void returnBook(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        String studentId = input.nextLine().trim();
+        System.out.print("Enter Book ISBN to Return: ");
+        returnBook(studentId, input.nextLine().trim());
+    }
+
+    public boolean returnBook(String studentId, String isbn) {
+        Book book = books.get(isbn);
+        if (book == null) {
+            System.out.println(" Book not found in library.");
+            return false;
+        }
+
+        if (!closeLoan(book, studentId, LoanJournal.RETURNED)) {
+            System.out.println(studentId + " does not have a copy of this book.");
+            return false;
+        }
+        System.out.println(" Book '" + book.title + "' returned by " + studentId);
+        return true;
+    }
+
+    private void reserveBook(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        String studentId = input.nextLine().trim();
+        System.out.print("Enter Book ISBN to Reserve: ");
+        reserveBook(studentId, input.nextLine().trim());
+    }
+
+    // Joins the title's FIFO waitlist; if a copy is on the shelf it is simply lent now
+    public boolean reserveBook(String studentId, String isbn) {
+        if (!isStudentRegistered(studentId)) {
+            System.out.println("Student not found. Register first in Student Module.");
+            return false;
+        }
+
+        Book book = books.get(isbn);
+        if (book == null) {
+            System.out.println("Book not found in library.");
+            return false;
+        }
+
+        synchronized (book) {
+            if (book.loans.containsKey(studentId)) {
+                System.out.println(studentId + " already has a copy of '" + book.title + "'.");
+                return false;
+            }
+            if (book.available() > 0) {
+                Loan loan = openLoan(book, studentId);
+                System.out.println("A copy was free: '" + book.title + "' borrowed by " + studentId
+                    + ", due " + new Date(loan.deadline));
+                return true;
+            }
+            if (!book.waitlist.add(studentId)) {
+                System.out.println(studentId + " is already waiting for '" + book.title + "'.");
+                return false;
+            }
+            reservationsByStudent.computeIfAbsent(studentId, k -> ConcurrentHashMap.newKeySet()).add(isbn);
+            changeLog.record("library", "reserve", isbn, studentId);
+            System.out.println(studentId + " is number " + book.waitlist.size() + " on the waitlist for '" + book.title + "'.");
+            return true;
+        }
+    }
+
+    private void addCopies(Scanner input) {
+        System.out.print("Enter Book ISBN: ");
+        String isbn = input.nextLine().trim();
+        System.out.print("Number of copies to add: ");
+        try {
+            addCopies(isbn, Integer.parseInt(input.nextLine().trim()));
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a whole number.");
+        }
+    }
+
+    // New copies go to waiting students first, then onto the shelf
+    public boolean addCopies(String isbn, int count) {
+        Book book = books.get(isbn);
+        if (book == null || count <= 0) {
+            System.out.println(book == null ? "Book not found in library." : "Copy count must be positive.");
+            return false;
+        }
+        synchronized (book) {
+            book.copies += count;
+            changeLog.record("library", "copies", isbn, Integer.toString(book.copies));
+            while (book.available() > 0 && handOff(book)) {
+                // each hand-off lends one of the new copies
+            }
+            if (book.available() > 0) availableIsbns.add(isbn);
+            System.out.println("'" + book.title + "' now has " + book.copies + " copies ("
+                + book.available() + " on the shelf).");
+        }
+        return true;
+    }
+
+    //  Loan state transitions (book, indexes and due dates change together under the book's lock)
+
+    // Lends a free copy; caller holds the book's lock. Null when every copy is out
+    private Loan openLoan(Book book, String studentId) {
+        if (book.available() <= 0) return null;
+        Loan loan = new Loan(book.isbn, studentId);
+        book.loans.put(studentId, loan);
+        if (book.available() == 0) availableIsbns.remove(book.isbn);
+        borrowedIsbns.add(book.isbn);
+        loansByStudent.computeIfAbsent(studentId, k -> ConcurrentHashMap.newKeySet()).add(book.isbn);
+        long now = clock.getAsLong();
+        dueDates.schedule(loan, now + LOAN_PERIOD);
+        history.append(LoanJournal.BORROWED, book.isbn, studentId, now);
+        changeLog.record("library", "loan", book.isbn, studentId, Long.toString(loan.deadline));
+        // However the copy was lent, the student stops waiting for it (handOff has already
+        // taken them off; a direct borrow has not), so queue positions stay exact
+        if (book.waitlist.remove(studentId)) {
+            changeLog.record("library", "unreserve", book.isbn, studentId);
+            Set<String> reserved = reservationsByStudent.get(studentId);
+            if (reserved != null) reserved.remove(book.isbn);
+        }
+        return loan;
+    }
+
+    // Closes the student's loan if they still hold a copy; the copy goes straight to the
+    // head of the waitlist when someone is waiting, otherwise back on the shelf
+    private boolean closeLoan(Book book, String studentId, byte returnType) {
+        if (book == null) return false;
+        synchronized (book) {
+            Loan loan = book.loans.remove(studentId);
+            if (loan == null) return false;
+            if (!dueDates.cancel(loan)) overdueLoans.remove(loan);
+            Set<String> loans = loansByStudent.get(studentId);
+            if (loans != null) loans.remove(book.isbn);
+            history.append(returnType, book.isbn, studentId, clock.getAsLong());
+            changeLog.record("library", "return", book.isbn, studentId);
+
+            if (!handOff(book)) {
+                availableIsbns.add(book.isbn);
+                if (book.loans.isEmpty()) borrowedIsbns.remove(book.isbn);
+            }
+            return true;
+        }
+    }
+
+    // Lends a free copy to the student at the head of the waitlist (O(1)); caller holds the book's lock
+    private boolean handOff(Book book) {
+        while (!book.waitlist.isEmpty()) {
+            Iterator<String> head = book.waitlist.iterator();
+            String next = head.next();
+            head.remove();
+            changeLog.record("library", "unreserve", book.isbn, next);
+            Set<String> reserved = reservationsByStudent.get(next);
+            if (reserved != null) reserved.remove(book.isbn);
+            if (book.loans.containsKey(next)) continue;
+            Loan loan = openLoan(book, next);
+            System.out.println("Copy of '" + book.title + "' handed to waiting student " + next
+                + ", due " + new Date(loan.deadline));
+            return true;
+        }
+        return false;
+    }
+
+    //  Overdue loans
+
+    // Moves loans that fell due since the last check into the overdue set; only the
+    // wheel buckets for the elapsed hours are visited. Returns how many became overdue
+    public int checkOverdue() {
+        int count = 0;
+        for (TimingWheel.Entry e : dueDates.advance(clock.getAsLong())) {
+            Loan loan = (Loan) e;
+            Book book = books.get(loan.isbn);
+            synchronized (book) {
+                if (book.loans.get(loan.studentId) != loan) continue; // returned meanwhile
+                overdueLoans.add(loan);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int overdueCount() {
+        checkOverdue();
+        return overdueLoans.size();
+    }
+
+    public void showOverdueLoans() {
+        showOverdueLoans(Listing.Mode.ALL);
+    }
+
+    // False only if an export failed
+    boolean showOverdueLoans(Listing.Mode mode) {
+        checkOverdue();
+        System.out.println("\n OVERDUE LOANS (" + overdueLoans.size() + "):");
+        if (overdueLoans.isEmpty()) {
+            System.out.println("Nothing is overdue.");
+            return Listing.nothing(mode);
+        }
+        long now = clock.getAsLong();
+        return Listing.show(() -> new LoanRows(overdueLoans.size(), overdueLoans.iterator()) {
+            public void format(Listing out) {
+                long days = (now - loan.deadline) / (24 * HOUR);
+                out.text(loan.isbn).text(" | ");
+                title(out, books.get(loan.isbn)).text(" → ").text(loan.studentId).text(" | due ");
+                date(out, loan.deadline).text(" (").number(days).text(" day").text(days == 1 ? "" : "s").text(" late)");
+            }
+        }, mode);
+    }
+
+    // Show all available books
+    public void showAvailableBooks() {
+        showAvailableBooks(Listing.Mode.ALL);
+    }
+
+    // False only if an export failed
+    boolean showAvailableBooks(Listing.Mode mode) {
+        System.out.println("\n AVAILABLE BOOKS (" + availableIsbns.size() + "):");
+        return Listing.show(() -> new Listing.Rows() {
+            private final long size = availableIsbns.size();
+            private final Iterator<String> isbns = availableIsbns.iterator();
+            private Book book;
+
+            public long size() {
+                return size;
+            }
+
+            public boolean next() {
+                if (!isbns.hasNext()) return false;
+                book = books.get(isbns.next());
+                return true;
+            }
+
+            public void format(Listing out) {
+                int available;
+                int copies;
+                int waiting;
+                synchronized (book) {
+                    available = book.available();
+                    copies = book.copies;
+                    waiting = book.waitlist.size();
+                }
+                title(out, book).text(" (").number(available).text(" of ").number(copies)
+                    .text(copies == 1 ? " copy available" : " copies available");
+                if (waiting > 0) out.text(", ").number(waiting).text(" waiting");
+                out.text(')');
+            }
+        }, mode);
+    }
+
+    // 📕 Show borrowed books and who borrowed them
+    public void showBorrowedBooks() {
+        showBorrowedBooks(Listing.Mode.ALL);
+    }
+
+    // One row per lent copy; false only if an export failed
+    boolean showBorrowedBooks(Listing.Mode mode) {
+        System.out.println("\n BORROWED BOOKS (" + borrowedIsbns.size() + "):");
+        if (borrowedIsbns.isEmpty()) {
+            System.out.println("No borrowed books right now.");
+            return Listing.nothing(mode);
+        }
+        return Listing.show(() -> {
+            List<Loan> loans = new ArrayList<>();
+            for (String isbn : borrowedIsbns) {
+                Book book = books.get(isbn);
+                synchronized (book) {
+                    loans.addAll(book.loans.values());
+                }
+            }
+            return new LoanRows(loans.size(), loans.iterator()) {
+                public void format(Listing out) {
+                    title(out, books.get(loan.isbn)).text(" → Borrowed by: ").text(loan.studentId).text(", due ");
+                    date(out, loan.deadline);
+                }
+            };
+        }, mode);
+    }
+
+    // Rows over a set of loans; the subclass formats them
+    private abstract static class LoanRows implements Listing.Rows {
+        private final long size;
+        private final Iterator<Loan> loans;
+        Loan loan;
+        private long dateSecond = Long.MIN_VALUE;
+        private String dateText;
+
+        LoanRows(long size, Iterator<Loan> loans) {
+            this.size = size;
+            this.loans = loans;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public boolean next() {
+            if (!loans.hasNext()) return false;
+            loan = loans.next();
+            return true;
+        }
+
+        // As Date.toString(), which only shows whole seconds; loans made together
+        // share the second, so the last text is reused
+        Listing date(Listing out, long deadline) {
+            long second = Math.floorDiv(deadline, 1000L);
+            if (second != dateSecond) {
+                dateText = new Date(deadline).toString();
+                dateSecond = second;
+            }
+            return out.text(dateText);
+        }
+    }
+
+    // Book.toString() without the concatenation
+    private static Listing title(Listing out, Book book) {
+        return book == null ? out.text("null") : out.text(book.title).text(" by ").text(book.author);
+    }
+
+    public void showStudentLoans(String studentId) {
+        Set<String> loans = getLoans(studentId);
+        if (loans.isEmpty()) {
+            System.out.println("No books borrowed by " + studentId + ".");
+            return;
+        }
+        System.out.println("\n BOOKS BORROWED BY " + studentId + " (" + loans.size() + "):");
+        for (String isbn : loans) {
+            Book book = books.get(isbn);
+            Loan loan;
+            synchronized (book) {
+                loan = book.loans.get(studentId);
+            }
+            if (loan != null) System.out.println(isbn + " | " + book + " | due " + new Date(loan.deadline));
+        }
+    }
+
+    // e.g. "2 of 3 copies available, 4 waiting"
+    private String availability(Book book) {
+        synchronized (book) {
+            String text = book.available() + " of " + book.copies + " cop" + (book.copies == 1 ? "y" : "ies") + " available";
+            return book.waitlist.isEmpty() ? text : text + ", " + book.waitlist.size() + " waiting";
+        }
+    }
+
+    // Ranked search; the last word also matches as a prefix ("head fir" finds "Head First Java")
+    public List<String> searchBooks(String query, int limit) {
+        return catalogueIndex.search(query, limit);
+    }
+
+    public void showSearchResults(String query) {
+        List<String> hits = searchBooks(query, SEARCH_RESULTS);
+        if (hits.isEmpty()) {
+            System.out.println("No books match '" + query.trim() + "'.");
+            return;
+        }
+        System.out.println("\n SEARCH RESULTS (" + hits.size() + "):");
+        for (String isbn : hits) {
+            Book book = books.get(isbn);
+            System.out.println(isbn + " | " + book + " (" + availability(book) + ")");
+        }
+    }
+
+    // ISBNs currently lent to a student (read-only view)
+    public Set<String> getLoans(String studentId) {
+        Set<String> loans = loansByStudent.get(studentId);
+        return loans == null ? Collections.emptySet() : Collections.unmodifiableSet(loans);
+    }
+
+    public int availableCount() {
+        return availableIsbns.size();
+    }
+
+    public int borrowedCount() {
+        return borrowedIsbns.size();
+    }
+
+    // Show recent borrow/return history, newest first, one page at a time
+    private void showHistory(Scanner input) {
+        System.out.println("\n📜 BORROW/RETURN HISTORY:");
+        if (history.isEmpty()) {
+            System.out.println("No activity yet.");
+            return;
+        }
+
+        int offset = 0;
+        while (true) {
+            int total = history.size();
+            history.readNewestFirst(offset, HISTORY_PAGE_SIZE, this::printEvent);
+            int last = Math.min(offset + HISTORY_PAGE_SIZE, total);
+            System.out.println("-- entries " + (offset + 1) + "-" + last + " of " + total
+                + " | n = next, p = previous, q = quit --");
+
+            String command = input.nextLine().trim();
+            if (command.equalsIgnoreCase("n") && last < total) offset += HISTORY_PAGE_SIZE;
+            else if (command.equalsIgnoreCase("p") && offset > 0) offset -= HISTORY_PAGE_SIZE;
+            else if (!command.equalsIgnoreCase("n") && !command.equalsIgnoreCase("p")) break;
+        }
+    }
+
+    private void printEvent(byte type, String isbn, String studentId, long timestamp) {
+        Book book = books.get(isbn);
+        String title = book != null ? book.title : isbn;
+        String action = type == LoanJournal.BORROWED ? "Borrowed"
+            : type == LoanJournal.RETURNED ? "Returned" : "Returned (student removed)";
+        System.out.println(action + ": " + title + " by " + studentId + " at " + new Date(timestamp));
+    }
+
+    // Pushes buffered history spill entries out to the file; called on leaving the menu
+    // and at shutdown (Persistence.close), so script runs lose nothing either
+    void flushHistory() {
+        history.flush();
+    }
+
+    // Evicted history entries are appended to this file from now on
+    public boolean setHistoryLog(String path) {
+        try {
+            history.spillTo(Paths.get(path));
+            System.out.println("Older history entries will be written to " + path);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not open log file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    //  Persistence (records: library catalogue <file> <size> <crc32c> | loan <isbn> <id> <due> | return | copies <isbn> <n> | reserve | unreserve)
+
+    void setChangeLog(Persistence.ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    // Applies a logged change as recorded: no hand-offs or new due dates (those were logged too)
+    void replay(String[] record) {
+        if (record[1].equals("catalogue")) {
+            // Logs from before catalogue checksums have only the path
+            String[] expected = record.length >= 5 ? new String[]{record[3], record[4]} : null;
+            if (!loadCatalogue(record[2], true, expected)) System.out.println("Loans and reservations on its books are dropped.");
+            return;
+        }
+        Book book = books.get(record[2]);
+        if (book == null) return; // not in this catalogue
+        synchronized (book) {
+            switch (record[1]) {
+                case "loan":
+                    restoreLoan(book, record[3], Long.parseLong(record[4]));
+                    break;
+                case "return": {
+                    Loan loan = book.loans.remove(record[3]);
+                    if (loan == null) return;
+                    if (!dueDates.cancel(loan)) overdueLoans.remove(loan);
+                    Set<String> loans = loansByStudent.get(record[3]);
+                    if (loans != null) loans.remove(book.isbn);
+                    break;
+                }
+                case "copies":
+                    book.copies = Integer.parseInt(record[3]);
+                    break;
+                case "reserve":
+                    if (book.waitlist.add(record[3])) {
+                        reservationsByStudent.computeIfAbsent(record[3], k -> ConcurrentHashMap.newKeySet()).add(book.isbn);
+                    }
+                    break;
+                case "unreserve": {
+                    book.waitlist.remove(record[3]);
+                    Set<String> reserved = reservationsByStudent.get(record[3]);
+                    if (reserved != null) reserved.remove(book.isbn);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("unknown operation " + record[1]);
+            }
+            refreshIndexes(book);
+        }
+    }
+
+    // Loans from a snapshot (fixed-width rows rather than records)
+    void restoreLoan(String isbn, String studentId, long deadline) {
+        Book book = books.get(isbn);
+        if (book == null) return; // not in this catalogue
+        synchronized (book) {
+            restoreLoan(book, studentId, deadline);
+            refreshIndexes(book);
+        }
+    }
+
+    private void restoreLoan(Book book, String studentId, long deadline) {
+        Loan loan = book.loans.get(studentId);
+        if (loan == null) {
+            loan = new Loan(book.isbn, studentId);
+            book.loans.put(studentId, loan);
+            loansByStudent.computeIfAbsent(studentId, k -> ConcurrentHashMap.newKeySet()).add(book.isbn);
+        }
+        overdueLoans.remove(loan);
+        dueDates.schedule(loan, deadline);
+    }
+
+    private void refreshIndexes(Book book) {
+        if (book.available() > 0) availableIsbns.add(book.isbn);
+        else availableIsbns.remove(book.isbn);
+        if (book.loans.isEmpty()) borrowedIsbns.remove(book.isbn);
+        else borrowedIsbns.add(book.isbn);
+    }
+
+    // Only books that differ from a freshly loaded catalogue: extra copies, loans, waitlists
+    void snapshot(SnapshotFile.Writer out) {
+        synchronized (catalogueFiles) {
+            for (Map.Entry<String, String[]> file : catalogueFiles.entrySet()) {
+                out.record("library", "catalogue", file.getKey(), file.getValue()[0], file.getValue()[1]);
+            }
+        }
+        for (Book book : books.values()) {
+            synchronized (book) {
+                if (book.copies != 1) out.record("library", "copies", book.isbn, Integer.toString(book.copies));
+                for (Loan loan : book.loans.values()) out.loan(book.isbn, loan.studentId, loan.deadline);
+                for (String studentId : book.waitlist) out.record("library", "reserve", book.isbn, studentId);
+            }
+        }
+    }
+
+    // Check if a student exists in the student module
+    private boolean isStudentRegistered(String id) {
+        if (studentModule == null) return false;
+        return studentModule.isRegistered(id);
+    }
+
+    // Inner Book class; copies, loans and the waitlist are guarded by the book's own lock
+    private static class Book {
+        String isbn;
+        String title;
+        String author;
+        int copies = 1;
+        final Map<String, Loan> loans = new HashMap<>();          // Student ID -> loan of one copy
+        final Set<String> waitlist = new LinkedHashSet<>();       // FIFO; O(1) join, leave and take head
+
+        Book(String isbn, String title, String author) {
+            this.isbn = isbn;
+            this.title = title;
+            this.author = author;
+        }
+
+        int available() {
+            return copies - loans.size();
+        }
+
+        @Override
+        public String toString() {
+            return title + " by " + author;
+        }
+    }
+
+    // One lent copy; sits in the due-date wheel until returned or overdue
+    private static class Loan extends TimingWheel.Entry {
+        final String isbn;
+        final String studentId;
+
+        Loan(String isbn, String studentId) {
+            this.isbn = isbn;
+            this.studentId = studentId;
+        }
+    }
+}
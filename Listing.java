@@ -0,0 +1,297 @@
+package mine;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Scanner;
+import java.util.function.Supplier;
+
+// Output for the long listings (students, fee status, allocations, marks, books).
+// Rows are formatted straight into one large char buffer: text, whole numbers and
+// doubles are copied in without building a String per field or per row, and the
+// buffer goes out in a few large writes instead of one println per row.
+// A listing is shown in one of four ways (see Mode): all of it, one page (offset and
+// limit), page by page with next/prev prompts, or streamed to a file.
+class Listing implements Closeable {
+
+    static final int PAGE_ROWS = 20;
+    private static final int BUFFER = 1 << 16;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final Charset CONSOLE_CHARSET = consoleCharset();
+
+    // One pass over a listing's rows, in display order; fresh for every pass
+    interface Rows {
+        long size();
+
+        // Moves to the next row; false after the last one
+        boolean next();
+
+        // Writes the current row, without the line break
+        void format(Listing out);
+
+        // Moves past n rows without formatting them; returns how many there were
+        default long skip(long n) {
+            long skipped = 0;
+            while (skipped < n && next()) skipped++;
+            return skipped;
+        }
+    }
+
+    // How a listing is shown
+    static final class Mode {
+        static final Mode ALL = new Mode(0, Long.MAX_VALUE, null, null);
+
+        private final long offset;
+        private final long limit;
+        private final Scanner input;  // browse
+        private final Path file;      // export
+
+        private Mode(long offset, long limit, Scanner input, Path file) {
+            this.offset = offset;
+            this.limit = limit;
+            this.input = input;
+            this.file = file;
+        }
+
+        // Rows [offset, offset + limit), followed by a line saying where they are
+        static Mode page(long offset, long limit) {
+            if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be zero or more");
+            return new Mode(offset, limit, null, null);
+        }
+
+        // PAGE_ROWS at a time; after each page the operator picks next, previous,
+        // a page number, an export or quit
+        static Mode browse(Scanner input) {
+            return new Mode(0, PAGE_ROWS, input, null);
+        }
+
+        // Every row into the file (replaced), nothing on the console but a summary
+        static Mode export(Path file) {
+            return new Mode(0, Long.MAX_VALUE, null, file);
+        }
+    }
+
+    // Shows the rows the given way; false only when an export failed
+    static boolean show(Supplier<Rows> source, Mode mode) {
+        if (mode.file != null) return export(source.get(), mode.file);
+        if (mode.input != null) {
+            browse(source, mode.input);
+            return true;
+        }
+        Rows rows = source.get();
+        long shown = page(rows, mode.offset, mode.limit);
+        if (mode != Mode.ALL) System.out.println(footer(mode.offset, shown, rows.size()));
+        return true;
+    }
+
+    // For a listing with nothing in it: an export still replaces the file, with no rows
+    static boolean nothing(Mode mode) {
+        if (mode.file == null) return true;
+        return export(new Rows() {
+            public long size() {
+                return 0;
+            }
+
+            public boolean next() {
+                return false;
+            }
+
+            public void format(Listing out) {
+            }
+        }, mode.file);
+    }
+
+    private static void browse(Supplier<Rows> source, Scanner input) {
+        long offset = 0;
+        while (true) {
+            Rows rows = source.get();
+            long total = rows.size();
+            if (offset >= total) offset = Math.max(0, (total - 1) / PAGE_ROWS * PAGE_ROWS); // shrank meanwhile
+            long shown = page(rows, offset, PAGE_ROWS);
+            if (offset == 0 && shown == total) return; // fits on one page
+            System.out.println(footer(offset, shown, total) + " | page " + (offset / PAGE_ROWS + 1)
+                + " of " + ((total + PAGE_ROWS - 1) / PAGE_ROWS));
+            System.out.print("[Enter] next, p previous, <number> page, e <file> export, q quit: ");
+            if (!input.hasNextLine()) return;
+            String answer = input.nextLine().trim();
+            if (answer.isEmpty() || answer.equalsIgnoreCase("n")) {
+                if (offset + PAGE_ROWS >= total) return; // Enter on the last page ends the listing
+                offset += PAGE_ROWS;
+            } else if (answer.equalsIgnoreCase("p")) {
+                offset = Math.max(0, offset - PAGE_ROWS);
+            } else if (answer.equalsIgnoreCase("q")) {
+                return;
+            } else if (answer.length() > 2 && (answer.startsWith("e ") || answer.startsWith("E "))) {
+                String name = answer.substring(2).trim();
+                try {
+                    export(source.get(), Paths.get(name));
+                } catch (InvalidPathException e) {
+                    System.out.println(" Could not export to " + name + ": " + e.getReason());
+                }
+            } else {
+                try {
+                    long page = Long.parseLong(answer);
+                    if (page < 1) throw new NumberFormatException();
+                    offset = Math.min(page - 1, (total - 1) / PAGE_ROWS) * PAGE_ROWS;
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid choice!");
+                }
+            }
+        }
+    }
+
+    private static String footer(long offset, long shown, long total) {
+        if (shown == 0) return String.format("-- no rows at %,d (%,d in total) --", offset + 1, total);
+        return String.format("-- rows %,d-%,d of %,d --", offset + 1, offset + shown, total);
+    }
+
+    // Writes rows [offset, offset + limit) to the console; returns how many there were
+    private static long page(Rows rows, long offset, long limit) {
+        long shown = 0;
+        try (Listing out = new Listing(System.out, CONSOLE_CHARSET, false)) {
+            rows.skip(offset);
+            while (shown < limit && rows.next()) {
+                rows.format(out);
+                out.endRow();
+                shown++;
+            }
+        }
+        return shown;
+    }
+
+    private static boolean export(Rows rows, Path file) {
+        long t0 = System.nanoTime();
+        long count = 0;
+        try (Listing out = new Listing(Files.newOutputStream(file), StandardCharsets.UTF_8, true)) {
+            while (rows.next()) {
+                rows.format(out);
+                out.endRow();
+                count++;
+            }
+        } catch (IOException | UncheckedIOException e) {
+            Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+            // NoSuchFileException and friends carry only the path as their message
+            String why = cause instanceof FileSystemException ? cause.getClass().getSimpleName() : cause.getMessage();
+            System.out.println(" Could not export to " + file + ": " + why);
+            return false;
+        }
+        System.out.println(String.format(" Exported %,d rows to %s in %,d ms.", count, file,
+            (System.nanoTime() - t0) / 1_000_000));
+        return true;
+    }
+
+    // System.out's own encoding, so the listing bytes match what println would write
+    private static Charset consoleCharset() {
+        String name = System.getProperty("sun.stdout.encoding");
+        try {
+            return name != null ? Charset.forName(name) : Charset.defaultCharset();
+        } catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
+    //  The buffer
+
+    private final Writer target;
+    private final boolean closeTarget;
+    private final char[] buffer = new char[BUFFER];
+    private int used;
+    private final StringBuilder digits = new StringBuilder(32); // reused for every number
+
+    // System.out (whatever it is right now) is flushed, never closed
+    private Listing(OutputStream stream, Charset charset, boolean closeTarget) {
+        this.target = new OutputStreamWriter(new BufferedOutputStream(stream, BUFFER), charset);
+        this.closeTarget = closeTarget;
+    }
+
+    Listing text(String s) {
+        for (int from = 0, n = s.length(); from < n; ) {
+            if (used == buffer.length) drain();
+            int count = Math.min(n - from, buffer.length - used);
+            s.getChars(from, from + count, buffer, used);
+            used += count;
+            from += count;
+        }
+        return this;
+    }
+
+    Listing text(char c) {
+        if (used == buffer.length) drain();
+        buffer[used++] = c;
+        return this;
+    }
+
+    Listing number(long v) {
+        digits.setLength(0);
+        return digits(digits.append(v));
+    }
+
+    // As Double.toString ("500.0"), which is what println of a double shows
+    Listing number(double v) {
+        digits.setLength(0);
+        return digits(digits.append(v));
+    }
+
+    // As String.format("%.<places>f", v): half-up on the shortest decimal form
+    Listing fixed(double v, int places) {
+        digits.setLength(0);
+        digits.append(v);
+        int dot = digits.indexOf(".");
+        if (dot < 0 || digits.indexOf("E") >= 0) return text(String.format("%." + places + "f", v)); // NaN, huge, tiny
+        int end = dot + 1 + places;
+        if (digits.length() <= end) {
+            while (digits.length() < end) digits.append('0');
+        } else {
+            boolean up = digits.charAt(end) >= '5';
+            digits.setLength(end);
+            for (int i = end - 1; up && i >= 0; i--) {
+                char c = digits.charAt(i);
+                if (c == '.') continue;
+                if (c == '-') {
+                    digits.insert(i + 1, '1');
+                    up = false;
+                } else if (c == '9') {
+                    digits.setCharAt(i, '0');
+                } else {
+                    digits.setCharAt(i, (char) (c + 1));
+                    up = false;
+                }
+            }
+            if (up) digits.insert(0, '1');
+        }
+        if (places == 0) digits.setLength(digits.length() - 1); // the dot
+        return digits(digits);
+    }
+
+    private Listing digits(StringBuilder d) {
+        if (used + d.length() > buffer.length) drain();
+        d.getChars(0, d.length(), buffer, used);
+        used += d.length();
+        return this;
+    }
+
+    void endRow() {
+        text(NEWLINE);
+    }
+
+    private void drain() {
+        try {
+            target.write(buffer, 0, used);
+            used = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        drain();
+        try {
+            if (closeTarget) target.close();
+            else target.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
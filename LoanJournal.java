@@ -0,0 +1,115 @@
+package mine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Fixed-capacity ring buffer of borrow/return events (structure of arrays, O(1) append).
+// When full, the oldest event is overwritten; if a spill file is set, it is first
+// appended to that file, so memory stays bounded while nothing is lost.
+// Reads walk the ring newest-first in pages and hand each event to a visitor (no copying).
+class LoanJournal {
+
+    static final byte BORROWED = 0;
+    static final byte RETURNED = 1;
+    static final byte RETURNED_STUDENT_REMOVED = 2;
+
+    // Receives one event per call
+    interface EventVisitor {
+        void visit(byte type, String isbn, String studentId, long timestamp);
+    }
+
+    private final byte[] types;
+    private final String[] isbns;
+    private final String[] studentIds;
+    private final long[] timestamps;
+    private int next;    // slot the next event goes into
+    private int size;
+
+    private Writer spill; // append-only overflow log, or null
+
+    LoanJournal(int capacity) {
+        types = new byte[capacity];
+        isbns = new String[capacity];
+        studentIds = new String[capacity];
+        timestamps = new long[capacity];
+    }
+
+    // Sends evicted events to an append-only text log (timestamp, type, ISBN, student; tab separated)
+    public synchronized void spillTo(Path file) throws IOException {
+        closeSpill();
+        spill = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // The timestamp comes from the caller's clock (Library's, so overdue checks and tests agree)
+    public synchronized void append(byte type, String isbn, String studentId, long timestamp) {
+        int capacity = types.length;
+        if (size == capacity) {
+            spillOldest();
+        } else {
+            size++;
+        }
+        types[next] = type;
+        isbns[next] = isbn;
+        studentIds[next] = studentId;
+        timestamps[next] = timestamp;
+        next = (next + 1) % capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Visits up to limit events, newest first, skipping the newest offset events; returns how many were visited
+    public synchronized int readNewestFirst(int offset, int limit, EventVisitor visitor) {
+        int capacity = types.length;
+        int visited = 0;
+        for (int i = offset; i < size && visited < limit; i++) {
+            int slot = Math.floorMod(next - 1 - i, capacity);
+            visitor.visit(types[slot], isbns[slot], studentIds[slot], timestamps[slot]);
+            visited++;
+        }
+        return visited;
+    }
+
+    public synchronized void flush() {
+        if (spill == null) return;
+        try {
+            spill.flush();
+        } catch (IOException e) {
+            System.out.println("Could not write history log: " + e.getMessage());
+        }
+    }
+
+    public synchronized void closeSpill() {
+        if (spill == null) return;
+        try {
+            spill.close();
+        } catch (IOException e) {
+            System.out.println("Could not close history log: " + e.getMessage());
+        }
+        spill = null;
+    }
+
+    // The oldest event sits in the slot about to be overwritten
+    private void spillOldest() {
+        if (spill == null) return;
+        try {
+            spill.write(Long.toString(timestamps[next]));
+            spill.write('\t');
+            spill.write(Byte.toString(types[next]));
+            spill.write('\t');
+            spill.write(isbns[next]);
+            spill.write('\t');
+            spill.write(studentIds[next]);
+            spill.write('\n');
+        } catch (IOException e) {
+            System.out.println("Could not write history log: " + e.getMessage());
+        }
+    }
+}
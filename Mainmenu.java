@@ -1,72 +1,136 @@
-package mine;
-
-import java.util.Scanner;
-
-public class Mainmenu {
-    public static void main(String[] args) {
-        Scanner input = new Scanner(System.in);
-        int choice = 0;
-
-        // ✅ Create ONE shared instance of each module
-        students studentModule = new students();
-		Courses courseModule = new Courses(studentModule); // share student data
-        fees feeModule = new fees(studentModule);           // now linked to student data
-        Library libraryModule = new Library(studentModule);
-        Performance performanceModule = new Performance(studentModule);
-
-        do {
-            System.out.println("\n");
-            System.out.println("     SCHOOL MANAGEMENT SYSTEM");
-            System.out.println("");
-            System.out.println("1. Student Management");
-            System.out.println("2. Courses");
-            System.out.println("3. Fee Tracking");
-            System.out.println("4. Library System");
-            System.out.println("5. Performance Analytics");
-            System.out.println("6. Exit");
-            System.out.println("");
-            System.out.print("Enter your choice: ");
-            
-            if (!input.hasNextInt()) {
-                System.out.println(" Please enter a valid number.");
-                input.nextLine();
-                continue;
-            }
-
-            choice = input.nextInt();
-            input.nextLine(); // clear the buffer
-
-            switch (choice) {
-                case 1:
-                    studentModule.run();
-                    break;
-
-                case 2:
-                    courseModule.run();
-                    break;
-
-                case 3:
-                    feeModule.run();
-                    break;
-
-                case 4:
-                    libraryModule.run();
-                    break;
-
-                case 5:
-                    performanceModule.run();
-                    break;
-
-                case 6:
-                    System.out.println(" Exiting System... Goodbye!");
-                    break;
-
-                default:
-                    System.out.println(" Invalid choice! Try again.");
-            }
-
-        } while (choice != 6);
-
-        input.close();
-    }
-}
+package mine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Scanner;
+
+public class Mainmenu {
+    // Interactive menus, or with "--script <file>" ("-" = stdin) a headless run of
+    // the commands in CommandShell; the exit status is 1 if any command failed
+    public static void main(String[] args) {
+        String script = args.length == 2 && args[0].equals("--script") ? args[1] : null;
+        if (args.length > 0 && script == null) {
+            System.out.println("Usage: java mine.Mainmenu [--script <file>|-]");
+            System.exit(2);
+        }
+        int choice = 0;
+
+        // ✅ Create ONE shared instance of each module
+        students studentModule = new students();
+		Courses courseModule = new Courses(studentModule); // share student data
+        fees feeModule = new fees(studentModule);           // now linked to student data
+        Library libraryModule = new Library(studentModule, System.getProperty("library.catalogue")); // -Dlibrary.catalogue=books.tsv
+        Performance performanceModule = new Performance(studentModule);
+
+        // Saved state: snapshot + change log in -Dschool.data (default ./school-data).
+        // Scripts sync the log in the background instead of per command; the final
+        // checkpoint makes the whole run durable
+        Persistence persistence = new Persistence(Paths.get(System.getProperty("school.data", "school-data")), script == null,
+            studentModule, courseModule, performanceModule, libraryModule);
+        try {
+            persistence.recover();
+        } catch (IOException e) {
+            System.out.println(" Could not open saved data (" + e.getMessage() + "). Changes will not be saved.");
+        }
+
+        if (script != null) {
+            CommandShell shell = new CommandShell(studentModule, courseModule, feeModule, libraryModule,
+                performanceModule, persistence);
+            System.exit(runScript(shell, script, persistence));
+        }
+
+        // One Scanner for every menu: each module reads from this same stdin buffer
+        Scanner input = new Scanner(System.in);
+        do {
+            persistence.maybeCheckpoint();
+            System.out.println("\n");
+            System.out.println("     SCHOOL MANAGEMENT SYSTEM");
+            System.out.println("");
+            System.out.println("1. Student Management");
+            System.out.println("2. Courses");
+            System.out.println("3. Fee Tracking");
+            System.out.println("4. Library System");
+            System.out.println("5. Performance Analytics");
+            System.out.println("6. Exit");
+            System.out.println("");
+            System.out.print("Enter your choice: ");
+            
+            if (!input.hasNextInt()) {
+                System.out.println(" Please enter a valid number.");
+                input.nextLine();
+                continue;
+            }
+
+            choice = input.nextInt();
+            input.nextLine(); // clear the buffer
+
+            switch (choice) {
+                case 1:
+                    studentModule.run(input);
+                    break;
+
+                case 2:
+                    courseModule.run(input);
+                    break;
+
+                case 3:
+                    feeModule.run(input);
+                    break;
+
+                case 4:
+                    libraryModule.run(input);
+                    break;
+
+                case 5:
+                    performanceModule.run(input);
+                    break;
+
+                case 6:
+                    System.out.println(" Exiting System... Goodbye!");
+                    break;
+
+                default:
+                    System.out.println(" Invalid choice! Try again.");
+            }
+
+        } while (choice != 6);
+
+        try {
+            persistence.close();
+        } catch (IOException e) {
+            System.out.println(" Could not save data: " + e.getMessage());
+        }
+        input.close();
+    }
+
+    // Runs a script with output buffered (flushed at the end, not per line)
+    private static int runScript(CommandShell shell, String script, Persistence persistence) {
+        PrintStream console = System.out;
+        PrintStream buffered = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        System.setOut(buffered);
+        long t0 = System.nanoTime();
+        int status = 0;
+        try (BufferedReader in = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8)) {
+            if (shell.run(in) > 0) status = 1;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Script stopped: " + e.getMessage());
+            status = 1;
+        } finally {
+            try {
+                persistence.close();
+            } catch (IOException e) {
+                System.out.println(" Could not save data: " + e.getMessage());
+            }
+            buffered.flush();
+            System.setOut(console);
+        }
+        long millis = Math.max(1, (System.nanoTime() - t0) / 1_000_000);
+        System.err.println(String.format("%,d commands, %,d failed, %,d ms (%,.0f commands/s)",
+            shell.executed(), shell.failed(), millis, shell.executed() * 1000.0 / millis));
+        return status;
+    }
+}
@@ -0,0 +1,171 @@
+package mine;
+
+import java.util.*;
+
+// Columnar storage for student marks.
+// One contiguous double[] per subject, a dense row per student (ID -> row index)
+// and a cached total per row, so class-wide statistics are tight loops over arrays.
+// Rows stay dense: removing a student moves the last row into the freed slot.
+// The ID -> row index is an open-addressing int table (no boxed Integers or entry objects).
+class MarksStore {
+
+    private final int subjectCount;
+    private double[][] columns;   // columns[subject][row]
+    private double[] totals;      // sum of a row's marks
+    private String[] ids;         // row -> student ID
+    private int[] slots;          // hash table of row + 1 (0 = empty), linear probing
+    private int count;
+
+    MarksStore(int subjectCount, int initialCapacity) {
+        this.subjectCount = subjectCount;
+        int capacity = Math.max(16, initialCapacity);
+        columns = new double[subjectCount][capacity];
+        totals = new double[capacity];
+        ids = new String[capacity];
+        slots = new int[tableSizeFor(capacity)];
+    }
+
+    MarksStore(int subjectCount) {
+        this(subjectCount, 16);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int subjectCount() {
+        return subjectCount;
+    }
+
+    public boolean contains(String studentId) {
+        return rowOf(studentId) >= 0;
+    }
+
+    // Row of a student, or -1 when they have no marks
+    public int rowOf(String studentId) {
+        int slot = slotOf(studentId);
+        return slot < 0 ? -1 : slots[slot] - 1;
+    }
+
+    // Stores (or overwrites) a student's marks and returns their row
+    public int put(String studentId, double[] marks) {
+        int row = rowOf(studentId);
+        if (row < 0) {
+            if (count == ids.length) grow();
+            row = count++;
+            ids[row] = studentId;
+            insertSlot(row);
+        }
+
+        double total = 0;
+        for (int s = 0; s < subjectCount; s++) {
+            columns[s][row] = marks[s];
+            total += marks[s];
+        }
+        totals[row] = total;
+        return row;
+    }
+
+    // Removes a student's marks; returns false when there were none
+    public boolean remove(String studentId) {
+        int slot = slotOf(studentId);
+        if (slot < 0) return false;
+
+        int row = slots[slot] - 1;
+        deleteSlot(slot);
+        int last = --count;
+        if (row != last) {
+            // Keep rows dense by moving the last row into the hole
+            slots[slotOf(ids[last])] = row + 1;
+            for (int s = 0; s < subjectCount; s++) columns[s][row] = columns[s][last];
+            totals[row] = totals[last];
+            ids[row] = ids[last];
+        }
+        ids[last] = null;
+        return true;
+    }
+
+    public String idAt(int row) {
+        return ids[row];
+    }
+
+    public double mark(int row, int subject) {
+        return columns[subject][row];
+    }
+
+    public double total(int row) {
+        return totals[row];
+    }
+
+    public double average(int row) {
+        return totals[row] / subjectCount;
+    }
+
+    // Direct column access for bulk loops; only the first size() entries are valid
+    double[] column(int subject) {
+        return columns[subject];
+    }
+
+    double[] totals() {
+        return totals;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        for (int s = 0; s < subjectCount; s++) columns[s] = Arrays.copyOf(columns[s], capacity);
+        totals = Arrays.copyOf(totals, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+
+        // Rehash into a larger table
+        slots = new int[tableSizeFor(capacity)];
+        for (int row = 0; row < count; row++) insertSlot(row);
+    }
+
+    //  ID -> row hash table
+
+    // Table at least twice the row capacity keeps probe chains short
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int slotOf(String id) {
+        int mask = slots.length - 1;
+        for (int i = hash(id) & mask; slots[i] != 0; i = (i + 1) & mask) {
+            if (ids[slots[i] - 1].equals(id)) return i;
+        }
+        return -1;
+    }
+
+    private void insertSlot(int row) {
+        int mask = slots.length - 1;
+        int i = hash(ids[row]) & mask;
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = row + 1;
+    }
+
+    // Backward-shift deletion, so lookups never need tombstones
+    private void deleteSlot(int hole) {
+        int mask = slots.length - 1;
+        int j = hole;
+        while (true) {
+            j = (j + 1) & mask;
+            if (slots[j] == 0) break;
+            int home = hash(ids[slots[j] - 1]) & mask;
+            // Entry at j can fill the hole only if its home is not in (hole, j]
+            boolean between = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+            if (between) continue;
+            slots[hole] = slots[j];
+            hole = j;
+        }
+        slots[hole] = 0;
+    }
+}
@@ -1,219 +1,444 @@
-package mine;
-
-import java.util.*;
-
-public class Performance {
-
-    private students studentModule; // shared student data
-    
-    // Core storage: Hash Map for quick lookup of a student's marks by ID
-    private Map<String, double[]> performanceData = new LinkedHashMap<>();
-    
-    private final String[] subjects = {"Java", "Data Structures", "Databases", "Networks", "Web Development"};
-
-    //  Data Structure for Ranking (Max Heap) 
-    // A Min-Heap (default in Java) is reversed to act as a Max-Heap by comparing averages.
-    private PriorityQueue<StudentAvg> rankingHeap = new PriorityQueue<>(
-        (s1, s2) -> Double.compare(s2.average, s1.average) // Comparator for Max Heap (Higher average = Higher priority)
-    );
-   
-
-    // Constructor
-    public Performance(students studentModule) {
-        this.studentModule = studentModule;
-    }
-
-    // Default constructor (for testing)
-    public Performance() {}
-
-    public void run() {
-        Scanner input = new Scanner(System.in);
-        int choice = 0;
-
-        do {
-            System.out.println("\nPERFORMANCE ANALYTICS");//using Max Heap
-            System.out.println("1. Record Student Marks");
-            System.out.println("2. View Individual Performance");
-            System.out.println("3. View All Student Performance");
-            System.out.println("4. Generate Performance Report");//Find top Student in 0(1)
-            System.out.println("5. Back to Main Menu");
-            System.out.print("Enter choice: ");
-
-            if (!input.hasNextInt()) {
-                System.out.println(" Please enter a number.");
-                input.nextLine();
-                continue;
-            }
-
-            choice = input.nextInt();
-            input.nextLine();
-
-            switch (choice) {
-                case 1:
-                    recordMarks(input);
-                    // Rebuild the ranking structure after new data is added
-                    rebuildRankingHeap();
-                    break;
-                case 2:
-                    viewStudentPerformance(input);
-                    break;
-                case 3:
-                    displayAllPerformance();
-                    break;
-                case 4:
-                    generateReport();
-                    break;
-                case 5:
-                    System.out.println("Returning to Main Menu...");
-                    break;
-                default:
-                    System.out.println(" Invalid choice!");
-            }
-
-        } while (choice != 5);
-    }
-
-    // Record marks for a student
-    private void recordMarks(Scanner input) {
-        System.out.print("Enter Student ID: ");
-        String studentId = input.nextLine().trim();
-
-        if (!isStudentRegistered(studentId)) {
-            System.out.println("Student not found. Register first in Student Module.");
-            return;
-        }
-
-        double[] marks = new double[subjects.length];
-
-        for (int i = 0; i < subjects.length; i++) {
-            System.out.print("Enter marks for " + subjects[i] + ": ");
-            while (!input.hasNextDouble()) {
-                System.out.println("Invalid input. Enter numeric marks.");
-                input.nextLine();
-            }
-            marks[i] = input.nextDouble();
-            input.nextLine();
-        }
-
-        performanceData.put(studentId, marks);
-        System.out.println("Marks recorded successfully for " + studentId);
-    }
-
-    // Helper method to rebuild the Max Heap (runs after new data is recorded)
-    private void rebuildRankingHeap() {
-        // Clear old rankings
-        rankingHeap.clear();
-
-        // Re-calculate and insert all current students into the Max Heap
-        for (Map.Entry<String, double[]> entry : performanceData.entrySet()) {
-            String id = entry.getKey();
-            double avg = Arrays.stream(entry.getValue()).average().orElse(0);
-            rankingHeap.offer(new StudentAvg(id, avg)); // offer = insert/push
-        }
-    }
-
-    // View one student's marks
-    private void viewStudentPerformance(Scanner input) {
-        System.out.print("Enter Student ID: ");
-        String id = input.nextLine().trim();
-
-        if (!performanceData.containsKey(id)) {
-            System.out.println("No performance data found for this student.");
-            return;
-        }
-
-        double[] marks = performanceData.get(id);
-        System.out.println("\n Performance for " + id + ":");
-        double total = 0;
-        for (int i = 0; i < subjects.length; i++) {
-            System.out.println(subjects[i] + ": " + marks[i]);
-            total += marks[i];
-        }
-        double avg = total / subjects.length;
-        System.out.println("Average: " + String.format("%.2f", avg));
-        System.out.println("Grade: " + getGrade(avg));
-        System.out.println("Status: " + (avg >= 40 ? "Pass" : "Fail"));
-    }
-
-    // Display all student performances
-    private void displayAllPerformance() {
-        if (performanceData.isEmpty()) {
-            System.out.println(" No performance data recorded yet.");
-            return;
-        }
-
-        System.out.println("\nALL STUDENT PERFORMANCE (Unsorted):");
-        for (Map.Entry<String, double[]> entry : performanceData.entrySet()) {
-            String id = entry.getKey();
-            double[] marks = entry.getValue();
-            double avg = Arrays.stream(marks).average().orElse(0);
-            System.out.println(id + " | Avg: " + String.format("%.2f", avg) + " | Grade: " + getGrade(avg));
-        }
-    }
-
-    // Generate performance report - Now uses the Max Heap
-    private void generateReport() {
-        if (performanceData.isEmpty()) {
-            System.out.println("No data to generate report.");
-            return;
-        }
-        
-        // Ensure the heap is up to date before querying the top student
-        // This is necessary if report is called before marks are recorded in the current session
-        if (rankingHeap.isEmpty() && !performanceData.isEmpty()) {
-            rebuildRankingHeap();
-        }
-
-        double classTotal = 0;
-        
-        // Calculate class total by iterating the underlying data (O(N))
-        for (double[] marks : performanceData.values()) {
-            classTotal += Arrays.stream(marks).average().orElse(0);
-        }
-
-        double classAverage = classTotal / performanceData.size();
-
-        // Retrieve top student in O(1) time using the Max Heap (peek)
-        StudentAvg topStudent = rankingHeap.peek();
-        String topStudentId = (topStudent != null) ? topStudent.studentId : "N/A";
-        double topAvg = (topStudent != null) ? topStudent.average : 0;
-
-
-        System.out.println("\nPERFORMANCE REPORT");
-        System.out.println("Total Students with Records: " + performanceData.size());
-        System.out.println("Class Average: " + String.format("%.2f", classAverage));
-        // This is the O(1) lookup part:
-        System.out.println("Top Student (via Max Heap): " + topStudentId + " (Avg: " + String.format("%.2f", topAvg) + ")");
-        System.out.println("\nMax Heap used for O(1) top student lookup.");
-    }
-
-    // Check if a student is registered
-    private boolean isStudentRegistered(String id) {
-        if (studentModule == null) return false;
-        List<Map<String, Object>> data = studentModule.getFeeData();
-        for (Map<String, Object> entry : data) {
-            if (entry.get("id").equals(id)) return true;
-        }
-        return false;
-    }
-
-    // Determine grade
-    private String getGrade(double avg) {
-        if (avg >= 70) return "A";
-        else if (avg >= 60) return "B";
-        else if (avg >= 50) return "C";
-        else if (avg >= 40) return "D";
-        else return "E";
-    }
-
-    //  Helper class to store student ID and average score for the Heap ---
-    private static class StudentAvg {
-        String studentId;
-        double average;
-
-        StudentAvg(String studentId, double average) {
-            this.studentId = studentId;
-            this.average = average;
-        }
-    }
+package mine;
+
+import java.util.*;
+
+public class Performance {
+
+    private students studentModule; // shared student data
+    
+    private final String[] subjects = {"Java", "Data Structures", "Databases", "Networks", "Web Development"};
+
+    // Core storage: columnar marks (one primitive array per subject, dense rows,
+    // cached per-student totals) with a hash map from student ID to row
+    private MarksStore performanceData = new MarksStore(subjects.length);
+
+    // Running mean/variance and a quantile histogram per subject, kept in step with performanceData
+    private SubjectStats[] subjectStats = new SubjectStats[subjects.length];
+    {
+        for (int s = 0; s < subjects.length; s++) subjectStats[s] = new SubjectStats();
+    }
+
+    //  Data Structure for Ranking (Order-Statistic Tree)
+    // Kept up to date one student at a time: O(log n) per mark entry,
+    // and answers top student, top-K, rank and percentile without a sort.
+    private RankingTree ranking = new RankingTree();
+
+    // Mark changes are reported here (see Persistence)
+    private Persistence.ChangeLog changeLog = Persistence.ChangeLog.NONE;
+
+
+    // Constructor
+    public Performance(students studentModule) {
+        this.studentModule = studentModule;
+
+        // Drop marks and ranking of a deleted student
+        if (studentModule != null) {
+            studentModule.addListener(new students.StudentListener() {
+                public void studentRemoved(String id) {
+                    int row = performanceData.rowOf(id);
+                    if (row < 0) return;
+                    ranking.remove(id, performanceData.average(row));
+                    forgetMarks(row);
+                    performanceData.remove(id);
+                }
+            });
+        }
+    }
+
+    // Default constructor (for testing)
+    public Performance() {}
+
+    public void run(Scanner input) {
+        int choice = 0;
+
+        do {
+            System.out.println("\nPERFORMANCE ANALYTICS");//using an order-statistic tree
+            System.out.println("1. Record Student Marks");
+            System.out.println("2. View Individual Performance");
+            System.out.println("3. View All Student Performance");
+            System.out.println("4. Generate Performance Report");
+            System.out.println("5. Top K Students");
+            System.out.println("6. Student Rank & Percentile");
+            System.out.println("7. Back to Main Menu");
+            System.out.print("Enter choice: ");
+
+            if (!input.hasNextInt()) {
+                System.out.println(" Please enter a number.");
+                input.nextLine();
+                continue;
+            }
+
+            choice = input.nextInt();
+            input.nextLine();
+
+            switch (choice) {
+                case 1:
+                    recordMarks(input);
+                    break;
+                case 2:
+                    viewStudentPerformance(input);
+                    break;
+                case 3:
+                    displayAllPerformance(Listing.Mode.browse(input));
+                    break;
+                case 4:
+                    generateReport();
+                    break;
+                case 5:
+                    showTopStudents(input);
+                    break;
+                case 6:
+                    showRank(input);
+                    break;
+                case 7:
+                    System.out.println("Returning to Main Menu...");
+                    break;
+                default:
+                    System.out.println(" Invalid choice!");
+            }
+
+        } while (choice != 7);
+    }
+
+    // Record marks for a student
+    private void recordMarks(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        String studentId = input.nextLine().trim();
+
+        if (!isStudentRegistered(studentId)) {
+            System.out.println("Student not found. Register first in Student Module.");
+            return;
+        }
+
+        double[] marks = new double[subjects.length];
+
+        for (int i = 0; i < subjects.length; i++) {
+            System.out.print("Enter marks for " + subjects[i] + ": ");
+            while (true) {
+                while (!input.hasNextDouble()) {
+                    System.out.println("Invalid input. Enter numeric marks.");
+                    input.nextLine();
+                }
+                marks[i] = input.nextDouble();
+                input.nextLine();
+                if (SubjectStats.validMark(marks[i])) break;
+                System.out.println("Marks must be between 0 and 100.");
+            }
+        }
+
+        recordMarks(studentId, marks);
+    }
+
+    // Stores marks and moves the student to their new position in the ranking (O(log n));
+    // false, with nothing stored, if any mark is not a number from 0 to 100
+    public boolean recordMarks(String studentId, double[] marks) {
+        int bad = invalidMark(marks);
+        if (bad >= 0) {
+            System.out.println("Invalid mark " + marks[bad] + " for " + subjects[bad] + ". Marks not recorded.");
+            return false;
+        }
+        storeMarks(studentId, marks);
+        changeLog.record(marksRecord(studentId, marks));
+        System.out.println("Marks recorded successfully for " + studentId);
+        return true;
+    }
+
+    // Index of the first mark outside 0-100 (or NaN), -1 if all are valid
+    private int invalidMark(double[] marks) {
+        for (int s = 0; s < subjects.length; s++) {
+            if (!SubjectStats.validMark(marks[s])) return s;
+        }
+        return -1;
+    }
+
+    private void storeMarks(String studentId, double[] marks) {
+        int oldRow = performanceData.rowOf(studentId);
+        if (oldRow >= 0) {
+            ranking.remove(studentId, performanceData.average(oldRow));
+            forgetMarks(oldRow);
+        }
+        int row = performanceData.put(studentId, marks);
+        ranking.insert(studentId, performanceData.average(row));
+        for (int s = 0; s < subjects.length; s++) subjectStats[s].add(marks[s]);
+    }
+
+    // Takes a row's marks back out of the streaming statistics
+    private void forgetMarks(int row) {
+        for (int s = 0; s < subjects.length; s++) subjectStats[s].remove(performanceData.mark(row, s));
+    }
+
+    // Streaming per-subject queries (constant time, no sorting)
+    public double subjectPercentile(int subject, double q) {
+        return subjectStats[subject].quantile(q);
+    }
+
+    public double subjectStandardDeviation(int subject) {
+        return subjectStats[subject].standardDeviation();
+    }
+
+    // Average from the cached row total (no re-summing)
+    private double average(String studentId) {
+        return performanceData.average(performanceData.rowOf(studentId));
+    }
+
+    // Leaderboard: the K best students, in rank order
+    private void showTopStudents(Scanner input) {
+        System.out.print("How many students (K): ");
+        if (!input.hasNextInt()) {
+            System.out.println("Invalid number.");
+            input.nextLine();
+            return;
+        }
+        int k = input.nextInt();
+        input.nextLine();
+        showTopStudents(k);
+    }
+
+    public void showTopStudents(int k) {
+        List<String> top = topStudents(k);
+        if (top.isEmpty()) {
+            System.out.println("No performance data recorded yet.");
+            return;
+        }
+        System.out.println("\nTOP " + top.size() + " STUDENTS:");
+        int position = 1;
+        for (String id : top) {
+            System.out.println(position + ". " + id + " | Avg: " + String.format("%.2f", average(id)));
+            position++;
+        }
+    }
+
+    private void showRank(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        showRank(input.nextLine().trim());
+    }
+
+    public void showRank(String id) {
+        int rank = rankOf(id);
+        if (rank < 0) {
+            System.out.println("No performance data found for this student.");
+            return;
+        }
+        System.out.println(id + " is ranked " + rank + " of " + ranking.size()
+            + " (percentile: " + String.format("%.1f", percentileOf(id)) + ")");
+    }
+
+    public int subjectCount() {
+        return subjects.length;
+    }
+
+    public List<String> topStudents(int k) {
+        return ranking.topK(Math.max(0, k));
+    }
+
+    // 1-based rank (1 = highest average), or -1 when the student has no marks
+    public int rankOf(String studentId) {
+        int row = performanceData.rowOf(studentId);
+        if (row < 0) return -1;
+        return ranking.rankOf(studentId, performanceData.average(row));
+    }
+
+    // Percentage of students ranked below this student, or -1 when unknown
+    public double percentileOf(String studentId) {
+        int rank = rankOf(studentId);
+        if (rank < 0) return -1;
+        return 100.0 * (ranking.size() - rank) / ranking.size();
+    }
+
+    // View one student's marks
+    private void viewStudentPerformance(Scanner input) {
+        System.out.print("Enter Student ID: ");
+        viewStudentPerformance(input.nextLine().trim());
+    }
+
+    public void viewStudentPerformance(String id) {
+        int row = performanceData.rowOf(id);
+        if (row < 0) {
+            System.out.println("No performance data found for this student.");
+            return;
+        }
+
+        System.out.println("\n Performance for " + id + ":");
+        for (int i = 0; i < subjects.length; i++) {
+            System.out.println(subjects[i] + ": " + performanceData.mark(row, i));
+        }
+        double avg = performanceData.average(row);
+        System.out.println("Average: " + String.format("%.2f", avg));
+        System.out.println("Grade: " + getGrade(avg));
+        System.out.println("Status: " + (avg >= PASS_MARK ? "Pass" : "Fail"));
+    }
+
+    // Display all student performances
+    public void displayAllPerformance() {
+        displayAllPerformance(Listing.Mode.ALL);
+    }
+
+    // False only if an export failed
+    boolean displayAllPerformance(Listing.Mode mode) {
+        if (performanceData.isEmpty()) {
+            System.out.println(" No performance data recorded yet.");
+            return Listing.nothing(mode);
+        }
+
+        System.out.println("\nALL STUDENT PERFORMANCE (Unsorted):");
+        return Listing.show(this::performanceRows, mode);
+    }
+
+    // Rows are the store's rows, so a page further down is reached without walking to it
+    private Listing.Rows performanceRows() {
+        return new Listing.Rows() {
+            private final int size = performanceData.size();
+            private int row = -1;
+
+            public long size() {
+                return size;
+            }
+
+            public boolean next() {
+                if (row + 1 >= size) return false;
+                row++;
+                return true;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, size - 1L - row));
+                row += (int) skipped;
+                return skipped;
+            }
+
+            public void format(Listing out) {
+                double avg = performanceData.average(row);
+                out.text(performanceData.idAt(row)).text(" | Avg: ").fixed(avg, 2).text(" | Grade: ").text(getGrade(avg));
+            }
+        };
+    }
+
+    // Generate performance report - uses the ranking tree for the top student
+    public void generateReport() {
+        if (performanceData.isEmpty()) {
+            System.out.println("No data to generate report.");
+            return;
+        }
+
+        // Fork-join statistics engine (sequential for small classes, same result either way)
+        ReportEngine.Result stats = ReportEngine.compute(performanceData);
+
+        // Retrieve top student in O(log n) time from the ranking tree
+        String topId = ranking.firstId();
+        String topStudentId = (topId != null) ? topId : "N/A";
+        double topAvg = (topId != null) ? average(topId) : 0;
+
+
+        System.out.println("\nPERFORMANCE REPORT");
+        System.out.println("Total Students with Records: " + stats.count);
+        System.out.println("Class Average: " + String.format("%.2f", stats.classAverage));
+        System.out.println("Top Student: " + topStudentId + " (Avg: " + String.format("%.2f", topAvg) + ")");
+        System.out.println("Passed: " + stats.passed + " | Failed: " + stats.failed);
+        System.out.println("\nSubject Statistics:");
+        for (int s = 0; s < subjects.length; s++) {
+            System.out.println("  " + subjects[s] + ": Mean " + String.format("%.2f", stats.subjectMean[s])
+                + " | Variance " + String.format("%.2f", stats.subjectVariance[s])
+                + " | Min " + stats.subjectMin[s] + " | Max " + stats.subjectMax[s]);
+        }
+        System.out.println("\nSubject Distribution (streaming):");
+        for (int s = 0; s < subjects.length; s++) {
+            SubjectStats st = subjectStats[s];
+            System.out.println("  " + subjects[s] + ": Median " + String.format("%.1f", st.median())
+                + " | Q1 " + String.format("%.1f", st.quantile(0.25))
+                + " | Q3 " + String.format("%.1f", st.quantile(0.75))
+                + " | Std Dev " + String.format("%.2f", st.standardDeviation()));
+        }
+        System.out.println("\nGrade Distribution:");
+        for (int g = 0; g < GRADES.length; g++) {
+            System.out.println("  " + GRADES[g] + ": " + stats.gradeCounts[g]);
+        }
+    }
+
+    //  Persistence (records: marks set <id> <mark per subject>)
+
+    void setChangeLog(Persistence.ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    void replay(String[] record) {
+        if (!record[1].equals("set")) throw new IllegalArgumentException("unknown operation " + record[1]);
+        double[] marks = new double[subjects.length];
+        for (int s = 0; s < subjects.length; s++) marks[s] = Double.parseDouble(record[3 + s]);
+        int bad = invalidMark(marks);
+        if (bad >= 0) throw new IllegalArgumentException("mark outside 0-100: " + marks[bad]);
+        storeMarks(record[2], marks);
+    }
+
+    // Written in rank order, so restore() can link the ranking without sorting
+    void snapshot(SnapshotFile.Writer out) {
+        double[] marks = new double[subjects.length];
+        for (String id : ranking.topK(ranking.size())) {
+            int row = performanceData.rowOf(id);
+            for (int s = 0; s < subjects.length; s++) marks[s] = performanceData.mark(row, s);
+            out.marks(id, marks);
+        }
+    }
+
+    // Bulk load into an empty module from snapshot columns (columns[subject][row]):
+    // a presized store and a ranking built in one pass instead of one insert per student
+    void restore(String[] studentIds, double[][] columns, int count) {
+        if (!performanceData.isEmpty()) throw new IllegalStateException("marks already recorded");
+        if (count > 0 && columns.length != subjects.length) {
+            throw new IllegalArgumentException("snapshot has " + columns.length + " subjects, expected " + subjects.length);
+        }
+        performanceData = new MarksStore(subjects.length, count);
+        double[] marks = new double[subjects.length];
+        for (int i = 0; i < count; i++) {
+            for (int s = 0; s < subjects.length; s++) marks[s] = columns[s][i];
+            int bad = invalidMark(marks);
+            if (bad >= 0) {
+                System.out.println("Skipping marks of " + studentIds[i] + ": mark outside 0-100: " + marks[bad]);
+                continue;
+            }
+            for (int s = 0; s < subjects.length; s++) subjectStats[s].add(marks[s]);
+            performanceData.put(studentIds[i], marks);
+        }
+
+        String[] ids = new String[performanceData.size()];
+        double[] averages = new double[ids.length];
+        for (int row = 0; row < ids.length; row++) {
+            ids[row] = performanceData.idAt(row);
+            averages[row] = performanceData.average(row);
+        }
+        ranking = RankingTree.build(ids, averages, ids.length);
+    }
+
+    private String[] marksRecord(String studentId, double[] marks) {
+        String[] record = new String[3 + subjects.length];
+        record[0] = "marks";
+        record[1] = "set";
+        record[2] = studentId;
+        for (int s = 0; s < subjects.length; s++) record[3 + s] = Double.toString(marks[s]);
+        return record;
+    }
+
+    // Check if a student is registered
+    private boolean isStudentRegistered(String id) {
+        if (studentModule == null) return false;
+        return studentModule.isRegistered(id);
+    }
+
+    private static final String[] GRADES = {"A", "B", "C", "D", "E"};
+    static final int GRADE_COUNT = GRADES.length;
+    static final double PASS_MARK = 40;
+
+    // Determine grade
+    private String getGrade(double avg) {
+        return GRADES[gradeIndex(avg)];
+    }
+
+    // Index into GRADES, so grade counts can be kept in a plain int[]
+    static int gradeIndex(double avg) {
+        if (avg >= 70) return 0;
+        else if (avg >= 60) return 1;
+        else if (avg >= 50) return 2;
+        else if (avg >= 40) return 3;
+        else return 4;
+    }
 }
\ No newline at end of file
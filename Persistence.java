@@ -0,0 +1,290 @@
+package mine;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Durability for all module state. Every change is appended to a write-ahead log
+// (see WriteAheadLog); every CHECKPOINT_RECORDS records a binary snapshot of the
+// current state is written (see SnapshotFile) and older log segments are deleted.
+// Startup bulk-loads the newest snapshot and replays the log written after it.
+// Records are absolute and idempotent ("student paid S1 500.0", "course seat S1 Python"),
+// so replaying a record the snapshot already reflects changes nothing; that is what
+// lets a snapshot be taken without stopping the log.
+// Modules report changes through a ChangeLog and apply records in replay(); fees and
+// timetables are derived from that state and rebuild themselves.
+class Persistence implements Closeable {
+
+    static final long CHECKPOINT_RECORDS = 100_000;
+
+    // Where modules report their changes (first field: module, second: operation)
+    interface ChangeLog {
+        ChangeLog NONE = fields -> {};
+
+        void record(String... fields);
+    }
+
+    private interface Replayer {
+        void replay(String[] record);
+    }
+
+    private interface Snapshotter {
+        void snapshot(SnapshotFile.Writer out);
+    }
+
+    private final Path dir;
+    private final students studentModule;
+    private final Performance performanceModule;
+    private final Library libraryModule;
+    private final boolean syncCommit;
+    private final Map<String, Replayer> replayers = new HashMap<>();
+    private final List<Snapshotter> snapshotters = new ArrayList<>();
+    private WriteAheadLog wal;
+    private volatile boolean replaying;
+    private volatile boolean batching; // a registry batch is being delivered: sync once at its end
+    private boolean failed; // reported once, then changes are only kept in memory
+
+    private final ChangeLog log = this::append;
+
+    // syncCommit: each change is on disk before the call returns (fsyncs are shared
+    // by concurrent writers); otherwise the log is synced in the background every few ms
+    Persistence(Path dir, boolean syncCommit, students studentModule, Courses courseModule,
+                Performance performanceModule, Library libraryModule) {
+        this.dir = dir;
+        this.syncCommit = syncCommit;
+        this.studentModule = studentModule;
+        this.performanceModule = performanceModule;
+        this.libraryModule = libraryModule;
+
+        // Snapshot order: students first, everything else refers to them
+        if (studentModule != null) {
+            register("student", studentModule::replay, studentModule::snapshot);
+            studentModule.addListener(new students.StudentListener() {
+                public void studentAdded(String id, String name, double amountPaid) {
+                    log.record("student", "add", id, name, Double.toString(amountPaid));
+                }
+
+                public void studentRemoved(String id) {
+                    log.record("student", "remove", id);
+                }
+
+                public void paymentChanged(String id, double oldAmount, double newAmount) {
+                    log.record("student", "paid", id, Double.toString(newAmount));
+                }
+
+                public void batchStarted() {
+                    batching = true;
+                }
+
+                public void batchEnded() {
+                    batching = false;
+                    sync();
+                }
+            });
+        }
+        if (courseModule != null) {
+            register("course", courseModule::replay, courseModule::snapshot);
+            courseModule.setChangeLog(log);
+        }
+        if (performanceModule != null) {
+            register("marks", performanceModule::replay, performanceModule::snapshot);
+            performanceModule.setChangeLog(log);
+        }
+        if (libraryModule != null) {
+            register("library", libraryModule::replay, libraryModule::snapshot);
+            libraryModule.setChangeLog(log);
+        }
+    }
+
+    private void register(String module, Replayer replayer, Snapshotter snapshotter) {
+        replayers.put(module, replayer);
+        snapshotters.add(snapshotter);
+    }
+
+    //  Recovery
+
+    // Loads the newest snapshot, replays the log after it and opens the log for writing.
+    // IOException if the records after the snapshot are not all there; the log stays closed
+    public void recover() throws IOException {
+        Files.createDirectories(dir);
+        long t0 = System.nanoTime();
+        long snapshotLsn = 0;
+        long snapshotRecords = 0;
+        long logRecords = 0;
+
+        replaying = true;
+        try {
+            for (long lsn : snapshots()) {
+                Path file = snapshotPath(lsn);
+                long count = restoreSnapshot(file, lsn);
+                if (count < 0) {
+                    System.out.println("Snapshot " + file.getFileName() + " is damaged, skipping it.");
+                    continue;
+                }
+                snapshotRecords = count;
+                snapshotLsn = lsn;
+                break;
+            }
+
+            long nextLsn = snapshotLsn;
+            for (long start : WriteAheadLog.segments(dir)) {
+                if (start < snapshotLsn) continue; // already in the snapshot
+                if (start != nextLsn) {
+                    // Later records would apply to a base they were not written against, and
+                    // a checkpoint would make that permanent: leave the files as they are
+                    throw new IOException("change log gap: records " + nextLsn + "-" + (start - 1) + " are missing");
+                }
+                long count = WriteAheadLog.replaySegment(WriteAheadLog.segmentPath(dir, start), start,
+                    (lsn, fields) -> apply(fields));
+                logRecords += count;
+                nextLsn = start + count;
+            }
+            wal = new WriteAheadLog(dir, nextLsn, syncCommit, 5);
+        } finally {
+            replaying = false;
+        }
+
+        long millis = (System.nanoTime() - t0) / 1_000_000;
+        if (snapshotRecords + logRecords > 0) {
+            System.out.println(String.format("Recovered %,d snapshot records and %,d log records in %d ms.",
+                snapshotRecords, logRecords, millis));
+        }
+    }
+
+    private void apply(String[] fields) {
+        Replayer replayer = fields.length >= 2 ? replayers.get(fields[0]) : null;
+        if (replayer == null) return; // module not present in this run
+        try {
+            replayer.replay(fields);
+        } catch (RuntimeException e) {
+            System.out.println("Skipping unreadable record " + String.join(" ", fields) + ": " + e);
+        }
+    }
+
+    // Bulk-loads a binary snapshot into the (empty) modules; -1 if it is damaged.
+    // Nothing is applied unless the whole file verified
+    private long restoreSnapshot(Path file, long lsn) {
+        SnapshotFile snapshot;
+        try {
+            snapshot = SnapshotFile.read(file);
+        } catch (IOException e) {
+            System.out.println("Snapshot " + file.getFileName() + ": " + e.getMessage());
+            return -1;
+        }
+        if (snapshot.lsn != lsn) return -1;
+
+        if (studentModule != null) {
+            studentModule.restore(snapshot.studentIds, snapshot.studentNames, snapshot.amountsPaid, snapshot.studentCount);
+        }
+        if (performanceModule != null) {
+            performanceModule.restore(snapshot.marksIds, snapshot.marks, snapshot.marksCount);
+        }
+        // Records before loans: a catalogue load has to bring in the books the loans refer to
+        for (String[] record : snapshot.records) apply(record);
+        if (libraryModule != null) {
+            for (int i = 0; i < snapshot.loanCount; i++) {
+                libraryModule.restoreLoan(snapshot.loanIsbns[i], snapshot.loanStudents[i], snapshot.loanDeadlines[i]);
+            }
+        }
+        return snapshot.studentCount + snapshot.marksCount + snapshot.loanCount + snapshot.records.size();
+    }
+
+    //  Logging and checkpoints
+
+    private void append(String... fields) {
+        if (replaying || wal == null || failed) return;
+        try {
+            if (batching) wal.appendNoSync(fields);
+            else wal.append(fields);
+        } catch (IllegalArgumentException e) {
+            // This one record cannot be logged; the log itself is fine
+            System.out.println("Change not saved (" + e.getMessage() + "): " + fields[0] + " " + fields[1]);
+        } catch (UncheckedIOException e) {
+            fail(e);
+        }
+    }
+
+    private void sync() {
+        if (wal == null || failed) return;
+        try {
+            wal.sync();
+        } catch (UncheckedIOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(UncheckedIOException e) {
+        failed = true;
+        System.out.println("Could not write to the change log, changes are no longer saved: "
+            + e.getCause().getMessage());
+    }
+
+    // Takes a snapshot once enough changes have piled up; call between commands
+    public void maybeCheckpoint() {
+        if (wal == null || wal.segmentRecords() < CHECKPOINT_RECORDS) return;
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            System.out.println("Could not write snapshot: " + e.getMessage());
+        }
+    }
+
+    // Starts a new log segment, writes the full state as a snapshot for it and deletes
+    // what the snapshot replaces. The snapshot becomes visible only once it is complete
+    public void checkpoint() throws IOException {
+        long lsn = wal.rotate();
+        Path target = snapshotPath(lsn);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+
+        SnapshotFile.Writer writer = new SnapshotFile.Writer();
+        for (Snapshotter s : snapshotters) s.snapshot(writer);
+        writer.write(tmp, lsn); // fsynced before the rename
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (long old : snapshots()) {
+            if (old < lsn) Files.deleteIfExists(snapshotPath(old));
+        }
+        for (long start : WriteAheadLog.segments(dir)) {
+            if (start < lsn) Files.deleteIfExists(WriteAheadLog.segmentPath(dir, start));
+        }
+    }
+
+    public long loggedRecords() {
+        return wal == null ? 0 : wal.nextLsn();
+    }
+
+    public long syncCount() {
+        return wal == null ? 0 : wal.syncCount();
+    }
+
+    // Final snapshot, so the next start has no log to replay
+    @Override
+    public void close() throws IOException {
+        if (libraryModule != null) libraryModule.flushHistory(); // outside the change log, so even without one
+        if (wal == null) return;
+        if (!failed) checkpoint();
+        wal.close();
+        wal = null;
+    }
+
+    private Path snapshotPath(long lsn) {
+        return dir.resolve(String.format("snapshot-%016d.snap", lsn));
+    }
+
+    // Snapshot LSNs, newest first
+    private List<Long> snapshots() throws IOException {
+        List<Long> lsns = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "snapshot-*.snap")) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                try {
+                    lsns.add(Long.parseLong(name.substring(9, name.length() - 5)));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        lsns.sort(Collections.reverseOrder());
+        return lsns;
+    }
+}
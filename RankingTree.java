@@ -0,0 +1,186 @@
+package mine;
+
+import java.util.*;
+
+// Order-statistic tree (a treap where every node also stores its subtree size).
+// Ordered by average, highest first, with the student ID as tie-breaker.
+// Insert, remove, rank and top-K all run in O(log n) (+ K for top-K).
+class RankingTree {
+
+    private static class Node {
+        String studentId;
+        double average;
+        int priority; // random heap priority that keeps the tree balanced
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(String studentId, double average, int priority) {
+            this.studentId = studentId;
+            this.average = average;
+            this.priority = priority;
+        }
+    }
+
+    private Node root;
+    private final Random random = new Random();
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    // Builds a tree from scratch, linked in O(n) as a perfectly balanced tree whose
+    // priorities fall with depth, so the heap order holds and later random inserts
+    // settle near the leaves. Input already in rank order (as snapshots write it)
+    // skips the sort. Duplicate IDs are not expected.
+    static RankingTree build(String[] studentIds, double[] averages, int count) {
+        Node[] nodes = new Node[count];
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            nodes[i] = new Node(studentIds[i], averages[i], 0);
+            if (i > 0 && compare(averages[i], studentIds[i], nodes[i - 1]) < 0) sorted = false;
+        }
+        if (!sorted) Arrays.sort(nodes, 0, count, (a, b) -> compare(a.average, a.studentId, b));
+        RankingTree tree = new RankingTree();
+        tree.root = link(nodes, 0, count - 1, 0);
+        return tree;
+    }
+
+    private static Node link(Node[] nodes, int lo, int hi, int depth) {
+        if (lo > hi) return null;
+        int mid = (lo + hi) >>> 1;
+        Node node = nodes[mid];
+        node.priority = Integer.MAX_VALUE - depth;
+        node.left = link(nodes, lo, mid - 1, depth + 1);
+        node.right = link(nodes, mid + 1, hi, depth + 1);
+        update(node);
+        return node;
+    }
+
+    public void insert(String studentId, double average) {
+        Node[] parts = split(root, average, studentId);
+        Node node = new Node(studentId, average, random.nextInt());
+        root = merge(merge(parts[0], node), parts[1]);
+    }
+
+    // The caller passes the average the student was inserted with
+    public void remove(String studentId, double average) {
+        Node[] parts = split(root, average, studentId);   // [< key] [>= key]
+        Node right = parts[1];
+        if (right != null) {
+            // Cut off the leftmost node of the right part (the key itself, if present)
+            Node[] rest = splitFirst(right);
+            // splitFirst has already taken the right part apart, so any other node
+            // (the key is not in the tree) has to be merged back in
+            right = compare(average, studentId, rest[0]) == 0 ? rest[1] : merge(rest[0], rest[1]);
+        }
+        root = merge(parts[0], right);
+    }
+
+    // 1-based rank of the student (1 = best), or -1 if not in the tree
+    public int rankOf(String studentId, double average) {
+        int before = 0;
+        Node cur = root;
+        while (cur != null) {
+            int c = compare(average, studentId, cur);
+            if (c == 0) return before + size(cur.left) + 1;
+            if (c < 0) {
+                cur = cur.left;
+            } else {
+                before += size(cur.left) + 1;
+                cur = cur.right;
+            }
+        }
+        return -1;
+    }
+
+    // Best-ranked student ID, or null when empty
+    public String firstId() {
+        Node cur = root;
+        if (cur == null) return null;
+        while (cur.left != null) cur = cur.left;
+        return cur.studentId;
+    }
+
+    // The K best students in rank order; iterative in-order walk that stops after K
+    public List<String> topK(int k) {
+        List<String> result = new ArrayList<>(Math.min(k, size()));
+        Deque<Node> stack = new ArrayDeque<>();
+        Node cur = root;
+        while ((cur != null || !stack.isEmpty()) && result.size() < k) {
+            while (cur != null) {
+                stack.push(cur);
+                cur = cur.left;
+            }
+            cur = stack.pop();
+            result.add(cur.studentId);
+            cur = cur.right;
+        }
+        return result;
+    }
+
+    //  Treap helpers
+
+    // Negative when (average, id) ranks before node
+    private static int compare(double average, String studentId, Node node) {
+        int c = Double.compare(node.average, average); // higher average first
+        return c != 0 ? c : studentId.compareTo(node.studentId);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    // Splits into [nodes ranked before key] and [key and after]
+    private static Node[] split(Node node, double average, String studentId) {
+        if (node == null) return new Node[]{null, null};
+        if (compare(average, studentId, node) > 0) {
+            Node[] parts = split(node.right, average, studentId);
+            node.right = parts[0];
+            update(node);
+            return new Node[]{node, parts[1]};
+        } else {
+            Node[] parts = split(node.left, average, studentId);
+            node.left = parts[1];
+            update(node);
+            return new Node[]{parts[0], node};
+        }
+    }
+
+    // Splits off the first (leftmost) node: [first] [rest]
+    private static Node[] splitFirst(Node node) {
+        if (node.left == null) {
+            Node rest = node.right;
+            node.right = null;
+            update(node);
+            return new Node[]{node, rest};
+        }
+        Node[] parts = splitFirst(node.left);
+        node.left = parts[1];
+        update(node);
+        return new Node[]{parts[0], node};
+    }
+
+    // Every key in a ranks before every key in b
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package mine;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Class-wide performance statistics over a MarksStore, computed on a fork-join pool.
+// Rows are cut into fixed-size chunks; each chunk is summarised on its own (in parallel
+// for large inputs) and the summaries are then combined in chunk order. Because the
+// chunking and the combine order never depend on the thread count, the parallel result
+// is bit-for-bit identical to the sequential one.
+class ReportEngine {
+
+    static final int CHUNK_SIZE = 8192;
+    static final int PARALLEL_THRESHOLD = 64 * 1024; // below this, fork-join costs more than it saves
+
+    // Final report figures
+    static class Result {
+        int count;
+        double classAverage;
+        double[] subjectMean;
+        double[] subjectVariance;   // population variance
+        double[] subjectMin;
+        double[] subjectMax;
+        int[] gradeCounts;          // indexed like Performance grades A..E
+        int passed;
+        int failed;
+    }
+
+    // Summary of one chunk (or of several chunks once combined)
+    private static class Partial {
+        int count;
+        double averageSum;
+        double[] mean;
+        double[] m2;    // sum of squared deviations from the mean
+        double[] min;
+        double[] max;
+        int[] gradeCounts = new int[Performance.GRADE_COUNT];
+        int passed;
+
+        Partial(int subjects) {
+            mean = new double[subjects];
+            m2 = new double[subjects];
+            min = new double[subjects];
+            max = new double[subjects];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+    }
+
+    // Parallel for large stores (common pool), sequential otherwise
+    static Result compute(MarksStore store) {
+        return compute(store, store.size() >= PARALLEL_THRESHOLD ? ForkJoinPool.commonPool() : null);
+    }
+
+    // pool == null runs sequentially
+    static Result compute(MarksStore store, ForkJoinPool pool) {
+        int n = store.size();
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Partial[] partials = new Partial[chunks];
+
+        if (pool == null || chunks < 2) {
+            for (int c = 0; c < chunks; c++) partials[c] = summarise(store, c);
+        } else {
+            pool.invoke(new ChunkTask(store, partials, 0, chunks));
+        }
+
+        // Combine strictly left to right so the result does not depend on scheduling
+        Partial total = new Partial(store.subjectCount());
+        for (Partial p : partials) combine(total, p);
+        return finish(total, store.subjectCount());
+    }
+
+    // Splits the chunk range in halves until one chunk per task
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final MarksStore store;
+        private final Partial[] partials;
+        private final int from;
+        private final int to;
+
+        ChunkTask(MarksStore store, Partial[] partials, int from, int to) {
+            this.store = store;
+            this.partials = partials;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                partials[from] = summarise(store, from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkTask(store, partials, from, mid), new ChunkTask(store, partials, mid, to));
+        }
+    }
+
+    private static Partial summarise(MarksStore store, int chunk) {
+        int subjects = store.subjectCount();
+        int from = chunk * CHUNK_SIZE;
+        int to = Math.min(store.size(), from + CHUNK_SIZE);
+        Partial p = new Partial(subjects);
+        p.count = to - from;
+
+        double[] totals = store.totals();
+        for (int row = from; row < to; row++) {
+            double avg = totals[row] / subjects;
+            p.averageSum += avg;
+            p.gradeCounts[Performance.gradeIndex(avg)]++;
+            if (avg >= Performance.PASS_MARK) p.passed++;
+        }
+
+        // Two passes per subject column: mean first, then squared deviations
+        for (int s = 0; s < subjects; s++) {
+            double[] column = store.column(s);
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int row = from; row < to; row++) {
+                double v = column[row];
+                sum += v;
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+            double mean = sum / p.count;
+            double m2 = 0;
+            for (int row = from; row < to; row++) {
+                double d = column[row] - mean;
+                m2 += d * d;
+            }
+            p.mean[s] = mean;
+            p.m2[s] = m2;
+            p.min[s] = min;
+            p.max[s] = max;
+        }
+        return p;
+    }
+
+    // Merges b into a (Chan et al. pairwise mean/variance update)
+    private static void combine(Partial a, Partial b) {
+        if (b.count == 0) return;
+        int n = a.count + b.count;
+        for (int s = 0; s < a.mean.length; s++) {
+            double delta = b.mean[s] - a.mean[s];
+            a.mean[s] += delta * b.count / n;
+            a.m2[s] += b.m2[s] + delta * delta * ((double) a.count * b.count / n);
+            a.min[s] = Math.min(a.min[s], b.min[s]);
+            a.max[s] = Math.max(a.max[s], b.max[s]);
+        }
+        for (int g = 0; g < a.gradeCounts.length; g++) a.gradeCounts[g] += b.gradeCounts[g];
+        a.averageSum += b.averageSum;
+        a.passed += b.passed;
+        a.count = n;
+    }
+
+    private static Result finish(Partial total, int subjects) {
+        Result r = new Result();
+        r.count = total.count;
+        r.classAverage = total.count == 0 ? 0 : total.averageSum / total.count;
+        r.subjectMean = total.mean;
+        r.subjectVariance = new double[subjects];
+        for (int s = 0; s < subjects; s++) {
+            r.subjectVariance[s] = total.count == 0 ? 0 : total.m2[s] / total.count;
+        }
+        r.subjectMin = total.min;
+        r.subjectMax = total.max;
+        r.gradeCounts = total.gradeCounts;
+        r.passed = total.passed;
+        r.failed = total.count - total.passed;
+        return r;
+    }
+}
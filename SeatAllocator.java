@@ -0,0 +1,88 @@
+package mine;
+
+import java.util.*;
+
+// Hands out course seats round-robin in O(1).
+// Only courses with a free seat sit in a circular queue: allocate() takes the course
+// at the front and puts it back at the end while it still has room, so full courses
+// are never scanned. Releasing a seat in a full course re-opens it.
+class SeatAllocator {
+
+    private final int[] capacity;
+    private final int[] used;
+    private final boolean[] queued;
+
+    // Circular queue of open course indexes (each course appears at most once)
+    private final int[] openQueue;
+    private int head;
+    private int openCount;
+
+    SeatAllocator(int[] capacities) {
+        this.capacity = capacities.clone();
+        this.used = new int[capacities.length];
+        this.queued = new boolean[capacities.length];
+        this.openQueue = new int[capacities.length];
+        reset();
+    }
+
+    // Empties every course and re-opens them in index order
+    public void reset() {
+        Arrays.fill(used, 0);
+        Arrays.fill(queued, false);
+        head = 0;
+        openCount = 0;
+        for (int c = 0; c < capacity.length; c++) {
+            if (capacity[c] > 0) enqueue(c);
+        }
+    }
+
+    // Takes a seat in the next open course; returns its index, or -1 if all are full
+    public int allocate() {
+        while (openCount > 0) {
+            int course = openQueue[head];
+            head = (head + 1) % openQueue.length;
+            openCount--;
+            queued[course] = false;
+
+            // A course filled through claim() may still be queued; drop it here
+            if (used[course] >= capacity[course]) continue;
+
+            used[course]++;
+            if (used[course] < capacity[course]) enqueue(course);
+            return course;
+        }
+        return -1;
+    }
+
+    // Records a seat taken in a specific course rather than the next open one, e.g. a
+    // seat kept across a capacity change. May push a course over capacity; returns
+    // false when it does
+    public boolean claim(int course) {
+        used[course]++;
+        return used[course] <= capacity[course];
+    }
+
+    public void release(int course) {
+        if (used[course] == 0) return;
+        used[course]--;
+        if (!queued[course] && used[course] < capacity[course]) enqueue(course);
+    }
+
+    public int used(int course) {
+        return used[course];
+    }
+
+    public int capacity(int course) {
+        return capacity[course];
+    }
+
+    public int courseCount() {
+        return capacity.length;
+    }
+
+    private void enqueue(int course) {
+        openQueue[(head + openCount) % openQueue.length] = course;
+        openCount++;
+        queued[course] = true;
+    }
+}
@@ -0,0 +1,319 @@
+package mine;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+// Binary snapshot of module state, read by memory-mapping the file.
+// Layout (big-endian, sections 8-byte aligned):
+//   header    64 bytes: magic, version, subject count, LSN, section counts, CRC32C
+//   strings   int offsets (count + 1) into the UTF-8 bytes that follow; every ID, name
+//             and record field is stored once and referred to by its index ("ref")
+//   students  16 bytes each: id ref, name ref, amount paid (registration order)
+//   marks     4 + 2 per subject: id ref, then each mark in hundredths as a short;
+//             ESCAPED stands for the next double of the overflow section
+//   overflow  8 bytes each: marks that are not a whole number of hundredths, in row order
+//   loans     16 bytes each: isbn ref, student ref, due date
+//   records   the rest of the module state: field count, then one ref per field
+// The checksum covers everything but its own 8 bytes; a file that fails it, or whose
+// size does not match its header, is rejected as a whole.
+// Readers get plain arrays (marks as one column per subject), so modules bulk-build
+// their structures instead of replaying one change at a time.
+class SnapshotFile {
+
+    static final int VERSION = 3;
+    private static final int VERSION_WIDE_MARKS = 2; // marks as 8 + 8 per subject, no overflow; still read
+    private static final long MAGIC = 0x5343484c534e4150L; // "SCHLSNAP"
+    private static final int HEADER = 64;
+    private static final int CHECKSUM_AT = 56;
+    private static final int STUDENT_BYTES = 16;
+    private static final int LOAN_BYTES = 16;
+    private static final short ESCAPED = -1;
+
+    // Contents, filled in by read()
+    long lsn;
+    int studentCount;
+    String[] studentIds;
+    String[] studentNames;
+    double[] amountsPaid;
+    int marksCount;
+    String[] marksIds;
+    double[][] marks;           // marks[subject][row]
+    int loanCount;
+    String[] loanIsbns;
+    String[] loanStudents;
+    long[] loanDeadlines;
+    List<String[]> records;
+
+    private SnapshotFile() {}
+
+    //  Reading
+
+    // Maps the file, verifies it and decodes every section; IOException if damaged
+    static SnapshotFile read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER) throw new IOException("too short for a snapshot");
+            if (size > Integer.MAX_VALUE) throw new IOException("snapshot larger than 2 GB");
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (map.getLong(0) != MAGIC) throw new IOException("not a snapshot");
+            int version = map.getInt(8);
+            if (version != VERSION && version != VERSION_WIDE_MARKS) {
+                throw new IOException("unsupported snapshot version " + version);
+            }
+            boolean wide = version == VERSION_WIDE_MARKS;
+            int subjectCount = map.getInt(12);
+            SnapshotFile s = new SnapshotFile();
+            s.lsn = map.getLong(16);
+            int stringCount = map.getInt(24);
+            int textBytes = map.getInt(28);
+            s.studentCount = map.getInt(32);
+            s.marksCount = map.getInt(36);
+            s.loanCount = map.getInt(40);
+            int recordInts = map.getInt(44);
+            int overflowCount = map.getInt(48);
+            if (subjectCount < 0 || stringCount < 0 || textBytes < 0 || s.studentCount < 0
+                || s.marksCount < 0 || s.loanCount < 0 || recordInts < 0 || overflowCount < 0) {
+                throw new IOException("damaged snapshot header");
+            }
+
+            long stringsAt = HEADER;
+            long textAt = stringsAt + 4L * (stringCount + 1);
+            long studentsAt = align(textAt + textBytes);
+            long marksAt = studentsAt + (long) STUDENT_BYTES * s.studentCount;
+            int marksBytes = wide ? 8 + 8 * subjectCount : 4 + 2 * subjectCount;
+            long overflowAt = marksAt + align((long) marksBytes * s.marksCount);
+            long loansAt = overflowAt + 8L * overflowCount;
+            long recordsAt = loansAt + (long) LOAN_BYTES * s.loanCount;
+            if (recordsAt + 4L * recordInts != size) throw new IOException("snapshot size does not match its header");
+
+            CRC32C crc = new CRC32C();
+            crc.update(map.duplicate().position(0).limit(CHECKSUM_AT));
+            crc.update(map.duplicate().position(HEADER).limit((int) size));
+            if (map.getLong(CHECKSUM_AT) != crc.getValue()) throw new IOException("snapshot checksum mismatch");
+
+            try {
+                // One bulk copy of the text, then one String per table entry
+                byte[] text = new byte[textBytes];
+                map.get((int) textAt, text);
+                String[] strings = new String[stringCount];
+                int from = map.getInt((int) stringsAt);
+                for (int i = 0; i < stringCount; i++) {
+                    int to = map.getInt((int) stringsAt + 4 * (i + 1));
+                    strings[i] = new String(text, from, to - from, StandardCharsets.UTF_8);
+                    from = to;
+                }
+
+                s.studentIds = new String[s.studentCount];
+                s.studentNames = new String[s.studentCount];
+                s.amountsPaid = new double[s.studentCount];
+                for (int i = 0, p = (int) studentsAt; i < s.studentCount; i++, p += STUDENT_BYTES) {
+                    s.studentIds[i] = strings[map.getInt(p)];
+                    s.studentNames[i] = strings[map.getInt(p + 4)];
+                    s.amountsPaid[i] = map.getDouble(p + 8);
+                }
+
+                s.marksIds = new String[s.marksCount];
+                s.marks = new double[subjectCount][s.marksCount];
+                int escaped = 0;
+                for (int i = 0, p = (int) marksAt; i < s.marksCount; i++, p += marksBytes) {
+                    s.marksIds[i] = strings[map.getInt(p)];
+                    for (int subject = 0; subject < subjectCount; subject++) {
+                        if (wide) {
+                            s.marks[subject][i] = map.getDouble(p + 8 + 8 * subject);
+                            continue;
+                        }
+                        short hundredths = map.getShort(p + 4 + 2 * subject);
+                        if (hundredths != ESCAPED) {
+                            s.marks[subject][i] = hundredths / 100.0;
+                        } else if (escaped < overflowCount) {
+                            s.marks[subject][i] = map.getDouble((int) overflowAt + 8 * escaped++);
+                        } else {
+                            throw new IOException("damaged snapshot: more escaped marks than overflow entries");
+                        }
+                    }
+                }
+
+                s.loanIsbns = new String[s.loanCount];
+                s.loanStudents = new String[s.loanCount];
+                s.loanDeadlines = new long[s.loanCount];
+                for (int i = 0, p = (int) loansAt; i < s.loanCount; i++, p += LOAN_BYTES) {
+                    s.loanIsbns[i] = strings[map.getInt(p)];
+                    s.loanStudents[i] = strings[map.getInt(p + 4)];
+                    s.loanDeadlines[i] = map.getLong(p + 8);
+                }
+
+                s.records = new ArrayList<>();
+                for (int p = (int) recordsAt; p < size; ) {
+                    String[] record = new String[map.getInt(p)];
+                    p += 4;
+                    for (int f = 0; f < record.length; f++, p += 4) record[f] = strings[map.getInt(p)];
+                    s.records.add(record);
+                }
+            } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+                throw new IOException("damaged snapshot: " + e.getMessage()); // checksum matched, so written wrong
+            }
+            return s;
+        }
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    //  Writing
+
+    // Collects the state modules hand it, then writes the file in one go.
+    // Also a ChangeLog, so state without a fixed-width section goes in as records.
+    static class Writer implements Persistence.ChangeLog {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Section students = new Section();
+        private final Section marks = new Section();
+        private final Section overflow = new Section();
+        private final Section loans = new Section();
+        private final Section records = new Section();
+        private int studentCount;
+        private int marksCount;
+        private int subjectCount = -1;
+        private int overflowCount;
+        private int loanCount;
+
+        void student(String id, String name, double amountPaid) {
+            students.putInt(ref(id)).putInt(ref(name)).putDouble(amountPaid);
+            studentCount++;
+        }
+
+        void marks(String studentId, double[] studentMarks) {
+            if (subjectCount < 0) subjectCount = studentMarks.length;
+            if (studentMarks.length != subjectCount) throw new IllegalArgumentException("subject count changed");
+            marks.putInt(ref(studentId));
+            for (double m : studentMarks) {
+                // Kept exactly: a short only when it reads back as the very same double
+                long hundredths = Math.round(m * 100);
+                if (hundredths >= 0 && hundredths <= Short.MAX_VALUE
+                    && Double.doubleToRawLongBits(hundredths / 100.0) == Double.doubleToRawLongBits(m)) {
+                    marks.putShort((short) hundredths);
+                } else {
+                    marks.putShort(ESCAPED);
+                    overflow.putDouble(m);
+                    overflowCount++;
+                }
+            }
+            marksCount++;
+        }
+
+        void loan(String isbn, String studentId, long deadline) {
+            loans.putInt(ref(isbn)).putInt(ref(studentId)).putLong(deadline);
+            loanCount++;
+        }
+
+        @Override
+        public void record(String... fields) {
+            records.putInt(fields.length);
+            for (String f : fields) records.putInt(ref(f));
+        }
+
+        // Writes and fsyncs the snapshot; the caller renames it into place
+        void write(Path file, long lsn) throws IOException {
+            Section offsets = new Section();
+            Section text = new Section();
+            offsets.putInt(0);
+            for (String s : strings) {
+                text.put(s.getBytes(StandardCharsets.UTF_8));
+                offsets.putInt(text.size);
+            }
+            int textLength = text.size;
+            while ((offsets.size + text.size) % 8 != 0) text.put(new byte[1]); // align the fixed-width sections
+            while (marks.size % 8 != 0) marks.put(new byte[1]);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putLong(MAGIC).putInt(VERSION).putInt(Math.max(0, subjectCount)).putLong(lsn)
+                .putInt(strings.size()).putInt(textLength)
+                .putInt(studentCount).putInt(marksCount).putInt(loanCount).putInt(records.size / 4)
+                .putInt(overflowCount);
+            ByteBuffer[] body = {offsets.buffer(), text.buffer(), students.buffer(), marks.buffer(),
+                overflow.buffer(), loans.buffer(), records.buffer()};
+
+            CRC32C crc = new CRC32C();
+            crc.update(header.array(), 0, CHECKSUM_AT);
+            for (ByteBuffer b : body) crc.update(b.duplicate());
+            header.putLong(CHECKSUM_AT, crc.getValue());
+            header.rewind();
+
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (header.hasRemaining()) ch.write(header);
+                for (ByteBuffer b : body) {
+                    while (b.hasRemaining()) ch.write(b);
+                }
+                ch.force(true);
+            }
+        }
+
+        private int ref(String s) {
+            Integer ref = refs.get(s);
+            if (ref == null) {
+                ref = strings.size();
+                refs.put(s, ref);
+                strings.add(s);
+            }
+            return ref;
+        }
+    }
+
+    // Growable big-endian byte array
+    private static class Section {
+        byte[] bytes = new byte[1024];
+        int size;
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                long capacity = Math.max((long) bytes.length * 2, (long) size + extra);
+                if (capacity > Integer.MAX_VALUE - 8) throw new IllegalStateException("snapshot section exceeds 2 GB");
+                bytes = Arrays.copyOf(bytes, (int) capacity);
+            }
+        }
+
+        Section putShort(short v) {
+            ensure(2);
+            bytes[size++] = (byte) (v >>> 8);
+            bytes[size++] = (byte) v;
+            return this;
+        }
+
+        Section putInt(int v) {
+            ensure(4);
+            bytes[size++] = (byte) (v >>> 24);
+            bytes[size++] = (byte) (v >>> 16);
+            bytes[size++] = (byte) (v >>> 8);
+            bytes[size++] = (byte) v;
+            return this;
+        }
+
+        Section putLong(long v) {
+            putInt((int) (v >>> 32));
+            return putInt((int) v);
+        }
+
+        Section putDouble(double v) {
+            return putLong(Double.doubleToRawLongBits(v));
+        }
+
+        void put(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package mine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Streaming bulk import of students from a CSV file (id,name,amountPaid per line).
+// Four stages joined by small bounded queues, each stage on its own thread:
+//   reader    -> batches of raw lines (with their line numbers)
+//   parser    -> fields; "quoted, fields" as in CatalogueLoader ("" is a quote)
+//   validator -> rejects rows without an ID or name, or with a bad amount
+//   inserter  -> the calling thread; each batch goes into the registry as one registry
+//                batch, so listeners and the change log handle it as a group.
+//                IDs already registered (or earlier in the file) are duplicates.
+// A full queue blocks the stage that feeds it, so no more than QUEUE_BATCHES batches
+// wait between two stages, however large the file. A first line "id,..." is a header.
+class StudentImport {
+
+    static final int BATCH_ROWS = 4096;
+    private static final int QUEUE_BATCHES = 4;
+    private static final int MAX_EXAMPLES = 10;
+
+    static class Result {
+        long rows;        // non-blank lines, header excluded
+        long imported;
+        long duplicates;
+        long invalid;
+        long millis;
+        final List<String> examples = new ArrayList<>(); // first rejected rows
+
+        double rowsPerSecond() {
+            return rows * 1000.0 / Math.max(1, millis);
+        }
+    }
+
+    // Rows travelling down the pipeline; each stage fills in its own arrays
+    private static class Batch {
+        final String[] lines = new String[BATCH_ROWS];
+        final long[] lineNumbers = new long[BATCH_ROWS];
+        int count;
+        String[][] fields;   // parser
+        double[] amounts;    // validator
+        String[] errors;     // parser and validator: why a row is rejected, else null
+        boolean last;        // end of the file (this batch may still hold rows)
+        Exception failure;   // a stage failed; the import stops here
+    }
+
+    private interface Step {
+        void apply(Batch batch);
+    }
+
+    // Imports the file; rejected rows are also written to rejectFile when it is not null
+    static Result run(students registry, Path file, Path rejectFile) throws IOException {
+        long t0 = System.nanoTime();
+        BlockingQueue<Batch> read = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        BlockingQueue<Batch> validated = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        List<Thread> stages = List.of(
+            stage("import-reader", () -> read(file, read)),
+            stage("import-parser", () -> transfer(read, parsed, StudentImport::parse)),
+            stage("import-validator", () -> transfer(parsed, validated, StudentImport::validate)));
+
+        Result result = new Result();
+        try (Writer rejects = rejectFile == null ? null : Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8)) {
+            while (true) {
+                Batch batch = validated.take();
+                if (batch.failure instanceof IOException) throw (IOException) batch.failure;
+                if (batch.failure != null) throw new IOException("Import failed: " + batch.failure, batch.failure);
+                insert(registry, batch, result, rejects);
+                if (batch.last) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } finally {
+            for (Thread t : stages) t.interrupt(); // only stops stages still running after a failure
+        }
+        result.millis = (System.nanoTime() - t0) / 1_000_000;
+        return result;
+    }
+
+    private interface StageBody {
+        void run() throws InterruptedException;
+    }
+
+    private static Thread stage(String name, StageBody body) {
+        Thread t = new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                // import abandoned downstream
+            }
+        }, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    //  Stages
+
+    private static void read(Path file, BlockingQueue<Batch> out) throws InterruptedException {
+        Batch batch = new Batch();
+        // Malformed bytes become U+FFFD instead of failing the whole file
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            long lineNumber = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                if (lineNumber == 1 && isHeader(line)) continue;
+                batch.lines[batch.count] = line;
+                batch.lineNumbers[batch.count++] = lineNumber;
+                if (batch.count == BATCH_ROWS) {
+                    out.put(batch); // blocks while the parser is behind
+                    batch = new Batch();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            batch.failure = e;
+        }
+        batch.last = true;
+        out.put(batch);
+    }
+
+    private static boolean isHeader(String line) {
+        int comma = line.indexOf(',');
+        String first = (comma < 0 ? line : line.substring(0, comma)).trim();
+        return first.equalsIgnoreCase("id") || first.equalsIgnoreCase("\"id\"");
+    }
+
+    // Runs one step on each batch and passes it on; a failed batch is passed on untouched
+    private static void transfer(BlockingQueue<Batch> in, BlockingQueue<Batch> out, Step step) throws InterruptedException {
+        while (true) {
+            Batch batch = in.take();
+            if (batch.failure == null) {
+                try {
+                    step.apply(batch);
+                } catch (RuntimeException e) {
+                    batch.failure = e;
+                    batch.last = true;
+                }
+            }
+            out.put(batch);
+            if (batch.last) return;
+        }
+    }
+
+    private static void parse(Batch batch) {
+        batch.fields = new String[batch.count][];
+        batch.errors = new String[batch.count];
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < batch.count; i++) {
+            String line = batch.lines[i];
+            fields.clear();
+            int pos = 0;
+            while (true) {
+                field.setLength(0);
+                if (pos < line.length() && line.charAt(pos) == '"') {
+                    pos++;
+                    while (pos < line.length()) {
+                        char c = line.charAt(pos++);
+                        if (c == '"') {
+                            if (pos < line.length() && line.charAt(pos) == '"') pos++;
+                            else break;
+                        }
+                        field.append(c);
+                    }
+                    while (pos < line.length() && line.charAt(pos) != ',') pos++; // junk after the quote
+                } else {
+                    int comma = line.indexOf(',', pos);
+                    int end = comma < 0 ? line.length() : comma;
+                    field.append(line, pos, end);
+                    pos = end;
+                }
+                fields.add(field.toString().trim());
+                if (pos >= line.length()) break;
+                pos++; // comma
+            }
+            if (fields.size() != 3) {
+                batch.errors[i] = "expected id,name,amountPaid but found " + fields.size() + " fields";
+            } else {
+                batch.fields[i] = fields.toArray(new String[3]);
+            }
+        }
+    }
+
+    private static void validate(Batch batch) {
+        batch.amounts = new double[batch.count];
+        for (int i = 0; i < batch.count; i++) {
+            if (batch.errors[i] != null) continue;
+            String[] f = batch.fields[i];
+            if (f[0].isEmpty()) {
+                batch.errors[i] = "missing ID";
+            } else if (hasWhitespace(f[0])) {
+                batch.errors[i] = "ID contains spaces";
+            } else if (f[1].isEmpty()) {
+                batch.errors[i] = "missing name";
+            } else {
+                try {
+                    double amount = Double.parseDouble(f[2]);
+                    if (!Double.isFinite(amount) || amount < 0) batch.errors[i] = "amount must be zero or more";
+                    else batch.amounts[i] = amount;
+                } catch (NumberFormatException e) {
+                    batch.errors[i] = "amount is not a number";
+                }
+            }
+        }
+    }
+
+    private static boolean hasWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    private static void insert(students registry, Batch batch, Result result, Writer rejects) throws IOException {
+        registry.beginBatch();
+        try {
+            for (int i = 0; i < batch.count; i++) {
+                result.rows++;
+                String error = batch.errors[i];
+                if (error == null) {
+                    String[] f = batch.fields[i];
+                    if (registry.importStudent(f[0], f[1], batch.amounts[i])) {
+                        result.imported++;
+                        continue;
+                    }
+                    error = "duplicate ID " + f[0];
+                    result.duplicates++;
+                } else {
+                    result.invalid++;
+                }
+                String report = "line " + batch.lineNumbers[i] + ": " + error + ": " + batch.lines[i];
+                if (result.examples.size() < MAX_EXAMPLES) result.examples.add(report);
+                if (rejects != null) {
+                    rejects.write(report);
+                    rejects.write('\n');
+                }
+            }
+        } finally {
+            registry.endBatch();
+        }
+    }
+}
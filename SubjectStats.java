@@ -0,0 +1,88 @@
+package mine;
+
+import java.util.*;
+
+// Streaming statistics for one subject, updated as marks are recorded or removed.
+// Mean and variance use Welford's online update (and its inverse for removals);
+// quantiles come from a fixed histogram over 0-100 in steps of 0.1, so memory is
+// bounded and a percentile query is a walk over 1001 buckets, whatever the class size.
+class SubjectStats {
+
+    static final double MAX_MARK = 100;
+    private static final int BUCKETS_PER_MARK = 10;
+    private static final int BUCKETS = (int) MAX_MARK * BUCKETS_PER_MARK + 1;
+
+    private long count;
+    private double mean;
+    private double m2;                 // sum of squared deviations from the mean
+    private final long[] histogram = new long[BUCKETS];
+
+    // Marks are 0-100. Anything else never gets in: one NaN would leave the mean NaN for
+    // good (remove() cannot take it back out), and the histogram has no bucket for it
+    static boolean validMark(double mark) {
+        return mark >= 0 && mark <= MAX_MARK; // false for NaN
+    }
+
+    public void add(double mark) {
+        if (!validMark(mark)) throw new IllegalArgumentException("mark outside 0-100: " + mark);
+        count++;
+        double delta = mark - mean;
+        mean += delta / count;
+        m2 += delta * (mark - mean);
+        histogram[bucket(mark)]++;
+    }
+
+    public void remove(double mark) {
+        if (count <= 1) {
+            count = 0;
+            mean = 0;
+            m2 = 0;
+            Arrays.fill(histogram, 0);
+            return;
+        }
+        double oldMean = (count * mean - mark) / (count - 1);
+        m2 -= (mark - mean) * (mark - oldMean);
+        if (m2 < 0) m2 = 0; // rounding guard
+        mean = oldMean;
+        count--;
+        histogram[bucket(mark)]--;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return mean;
+    }
+
+    // Population variance
+    public double variance() {
+        return count == 0 ? 0 : m2 / count;
+    }
+
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    // Nearest-rank quantile (q in 0..1), accurate to the 0.1 bucket width
+    public double quantile(double q) {
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram[b];
+            if (seen >= target) return (double) b / BUCKETS_PER_MARK;
+        }
+        return 100;
+    }
+
+    public double median() {
+        return quantile(0.5);
+    }
+
+    // Only called with valid marks, so the bucket is always 0..BUCKETS - 1
+    private static int bucket(double mark) {
+        return (int) Math.round(mark * BUCKETS_PER_MARK);
+    }
+}
@@ -0,0 +1,166 @@
+package mine;
+
+import java.util.*;
+
+// Weekly timetable: each course gets a set of teaching slots, stored as a bitset
+// (long words, one bit per slot), so "do these two courses overlap?" is a
+// word-level AND. Courses that share students form a weighted conflict graph
+// (weight = number of shared students), and a DSatur-style greedy colouring
+// places each course's sessions into the slots that cost the fewest clashes.
+class Timetable {
+
+    static final int DAYS = 5;
+    static final int PERIODS_PER_DAY = 8;
+    static final int SLOTS = DAYS * PERIODS_PER_DAY;
+    static final int WORDS = (SLOTS + 63) / 64;
+
+    private static final String[] DAY_NAMES = {"Mon", "Tue", "Wed", "Thu", "Fri"};
+
+    private final int courseCount;
+    private final int[] sessions;                 // sessions per week per course
+    private final long[][] slots;                 // slots[course] = bitset of its slots
+    private final List<Map<Integer, Integer>> neighbours = new ArrayList<>(); // course -> (course -> shared students)
+    private final List<int[]> loads = new ArrayList<>();  // course set of every student
+
+    Timetable(int[] sessionsPerWeek) {
+        this.courseCount = sessionsPerWeek.length;
+        this.sessions = sessionsPerWeek.clone();
+        this.slots = new long[courseCount][WORDS];
+        for (int c = 0; c < courseCount; c++) neighbours.add(new HashMap<>());
+    }
+
+    // Registers the courses one student attends; every pair becomes a conflict edge
+    public void addStudentLoad(int[] courses) {
+        courses = Arrays.stream(courses).distinct().toArray(); // a repeated course is not a clash
+        loads.add(courses);
+        for (int i = 0; i < courses.length; i++) {
+            for (int j = i + 1; j < courses.length; j++) {
+                int a = courses[i];
+                int b = courses[j];
+                neighbours.get(a).merge(b, 1, Integer::sum);
+                neighbours.get(b).merge(a, 1, Integer::sum);
+            }
+        }
+    }
+
+    // Places every course; returns the number of clashing student-session pairs left
+    public long schedule() {
+        for (long[] s : slots) Arrays.fill(s, 0);
+
+        boolean[] placed = new boolean[courseCount];
+        long[][] blocked = new long[courseCount][WORDS]; // union of placed neighbours' slots
+        int[] saturation = new int[courseCount];
+
+        // Max saturation first, then max degree (lazy entries are skipped when stale)
+        PriorityQueue<int[]> queue = new PriorityQueue<>((x, y) -> {
+            if (x[1] != y[1]) return Integer.compare(y[1], x[1]);
+            if (x[2] != y[2]) return Integer.compare(y[2], x[2]);
+            return Integer.compare(x[0], y[0]);
+        });
+        for (int c = 0; c < courseCount; c++) queue.add(new int[]{c, 0, neighbours.get(c).size()});
+
+        long[] cost = new long[SLOTS];
+        while (!queue.isEmpty()) {
+            int[] top = queue.poll();
+            int c = top[0];
+            if (placed[c] || top[1] != saturation[c]) continue;
+            placed[c] = true;
+
+            // Clash cost of each slot = students shared with neighbours already in that slot
+            Arrays.fill(cost, 0);
+            for (Map.Entry<Integer, Integer> e : neighbours.get(c).entrySet()) {
+                long[] other = slots[e.getKey()];
+                for (int w = 0; w < WORDS; w++) {
+                    long bits = other[w];
+                    while (bits != 0) {
+                        int slot = w * 64 + Long.numberOfTrailingZeros(bits);
+                        cost[slot] += e.getValue();
+                        bits &= bits - 1;
+                    }
+                }
+            }
+            pickSlots(c, cost);
+
+            // Neighbours now see these slots as blocked
+            for (int n : neighbours.get(c).keySet()) {
+                if (placed[n]) continue;
+                for (int w = 0; w < WORDS; w++) blocked[n][w] |= slots[c][w];
+                int sat = 0;
+                for (int w = 0; w < WORDS; w++) sat += Long.bitCount(blocked[n][w]);
+                if (sat != saturation[n]) {
+                    saturation[n] = sat;
+                    queue.add(new int[]{n, sat, neighbours.get(n).size()});
+                }
+            }
+        }
+        return countClashes();
+    }
+
+    // Cheapest slots first; among equal cost prefer a day the course does not use yet
+    private void pickSlots(int course, long[] cost) {
+        int need = Math.min(sessions[course], SLOTS);
+        boolean[] dayUsed = new boolean[DAYS];
+        for (int k = 0; k < need; k++) {
+            int best = -1;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (isSet(slots[course], slot)) continue;
+                if (best < 0 || cost[slot] < cost[best]
+                    || (cost[slot] == cost[best] && dayUsed[best / PERIODS_PER_DAY] && !dayUsed[slot / PERIODS_PER_DAY])) {
+                    best = slot;
+                }
+            }
+            slots[course][best >> 6] |= 1L << (best & 63);
+            dayUsed[best / PERIODS_PER_DAY] = true;
+        }
+    }
+
+    // Word-level AND: true when two courses share a slot
+    public boolean overlaps(int a, int b) {
+        for (int w = 0; w < WORDS; w++) {
+            if ((slots[a][w] & slots[b][w]) != 0) return true;
+        }
+        return false;
+    }
+
+    // Number of slots in which a student would have to be in two places at once
+    public int clashesFor(int[] courses) {
+        long[] seen = new long[WORDS];
+        int clashes = 0;
+        for (int c : courses) {
+            for (int w = 0; w < WORDS; w++) {
+                clashes += Long.bitCount(seen[w] & slots[c][w]);
+                seen[w] |= slots[c][w];
+            }
+        }
+        return clashes;
+    }
+
+    public long countClashes() {
+        long total = 0;
+        for (int[] load : loads) total += clashesFor(load);
+        return total;
+    }
+
+    public int studentsWithClashes() {
+        int count = 0;
+        for (int[] load : loads) {
+            if (clashesFor(load) > 0) count++;
+        }
+        return count;
+    }
+
+    // e.g. "Mon P1, Wed P3"
+    public String describe(int course) {
+        StringBuilder sb = new StringBuilder();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (!isSet(slots[course], slot)) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(DAY_NAMES[slot / PERIODS_PER_DAY]).append(" P").append(slot % PERIODS_PER_DAY + 1);
+        }
+        return sb.length() == 0 ? "not scheduled" : sb.toString();
+    }
+
+    private static boolean isSet(long[] bits, int slot) {
+        return (bits[slot >> 6] & (1L << (slot & 63))) != 0;
+    }
+}
@@ -0,0 +1,91 @@
+package mine;
+
+import java.util.*;
+
+// Hashed timing wheel: deadlines hash into a ring of buckets by tick (deadline / tick),
+// each bucket a doubly linked list, so schedule and cancel are O(1).
+// advance(now) only visits the buckets whose ticks have passed since the last call,
+// and within them only entries that share the bucket; it never walks every entry.
+// Deadlines further out than one rotation simply stay in their bucket until due.
+class TimingWheel {
+
+    // Something with a deadline; subclass it to carry the payload
+    static class Entry {
+        long deadline;
+        private Entry prev;
+        private Entry next;
+        private int bucket = -1;
+
+        boolean isScheduled() {
+            return bucket >= 0;
+        }
+    }
+
+    private final long tickMillis;
+    private final Entry[] buckets;
+    private long currentTick;   // every tick before this one has been processed
+    private int size;
+
+    TimingWheel(long tickMillis, int bucketCount, long now) {
+        this.tickMillis = tickMillis;
+        this.buckets = new Entry[bucketCount];
+        this.currentTick = now / tickMillis;
+    }
+
+    // An entry already due goes in the current bucket and fires on the next advance
+    public synchronized void schedule(Entry e, long deadline) {
+        if (e.isScheduled()) unlink(e);
+        e.deadline = deadline;
+        long tick = Math.max(deadline / tickMillis, currentTick);
+        int b = (int) (tick % buckets.length);
+        e.bucket = b;
+        e.prev = null;
+        e.next = buckets[b];
+        if (buckets[b] != null) buckets[b].prev = e;
+        buckets[b] = e;
+        size++;
+    }
+
+    public synchronized boolean cancel(Entry e) {
+        if (!e.isScheduled()) return false;
+        unlink(e);
+        return true;
+    }
+
+    // Removes and returns every entry whose deadline is at or before now
+    public synchronized List<Entry> advance(long now) {
+        List<Entry> expired = new ArrayList<>();
+        long targetTick = now / tickMillis;
+        if (targetTick < currentTick) return expired;
+
+        // Each bucket at most once, even after a long pause
+        long steps = Math.min(targetTick - currentTick, buckets.length - 1);
+        for (long t = currentTick; t <= currentTick + steps; t++) {
+            Entry e = buckets[(int) (t % buckets.length)];
+            while (e != null) {
+                Entry next = e.next;
+                if (e.deadline <= now) {
+                    unlink(e);
+                    expired.add(e);
+                }
+                e = next;
+            }
+        }
+        currentTick = targetTick; // the target tick is visited again next time: it may not be over yet
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void unlink(Entry e) {
+        if (e.prev != null) e.prev.next = e.next;
+        else buckets[e.bucket] = e.next;
+        if (e.next != null) e.next.prev = e.prev;
+        e.prev = null;
+        e.next = null;
+        e.bucket = -1;
+        size--;
+    }
+}
@@ -0,0 +1,358 @@
+package mine;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Append-only log of state changes, split into segment files named by the sequence
+// number (LSN) of their first record: wal-<lsn>.log.
+// Record framing: int payload length, int CRC32 of the payload, payload
+// (short field count with the top bit set, then each field as int byte length and
+// UTF-8). Logs written before fields had int lengths lack the bit and hold modified
+// UTF-8 (short length), which is still read. A torn or corrupt record ends the
+// segment; recovery truncates it there.
+// Group commit: appends only buffer the record. The first committer to find the
+// log not yet durable becomes the leader, writes everything buffered so far and
+// fsyncs once; committers that arrive meanwhile wait for that fsync (or the next)
+// instead of issuing their own. With syncCommit off, a background thread does the
+// same every flushIntervalMillis, so a crash can lose at most that window.
+class WriteAheadLog implements Closeable {
+
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+    private static final int LENGTH_PREFIXED = 0x8000; // field count flag: int field lengths
+
+    private final Path dir;
+    private final boolean syncCommit;
+    private FileChannel channel;
+    private long segmentStart;
+
+    // Guarded by this: records encoded but not yet written, and the next LSN
+    private final Buffer pending = new Buffer(64 * 1024);
+    private final Buffer payload = new Buffer(256);
+    private final DataOutputStream payloadOut = new DataOutputStream(payload);
+    private final CRC32 crc = new CRC32();
+    private long nextLsn;
+
+    // Guarded by flushLock: every record below durableLsn is on disk
+    private final Object flushLock = new Object();
+    private long durableLsn;
+    private boolean flushing;
+    private long syncCount;
+
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    WriteAheadLog(Path dir, long startLsn, boolean syncCommit, long flushIntervalMillis) throws IOException {
+        this.dir = dir;
+        this.syncCommit = syncCommit;
+        this.nextLsn = startLsn;
+        this.durableLsn = startLsn;
+        openSegment(startLsn);
+
+        if (syncCommit) {
+            flusher = null;
+        } else {
+            flusher = new Thread(() -> {
+                while (!closed) {
+                    try {
+                        Thread.sleep(flushIntervalMillis);
+                        sync();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (UncheckedIOException e) {
+                        System.out.println("Could not write to the change log: " + e.getCause().getMessage());
+                    }
+                }
+            }, "wal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    // Appends one record and returns its LSN; in sync mode returns once it is on disk
+    public long append(String... fields) {
+        long lsn = appendNoSync(fields);
+        if (syncCommit) awaitDurable(lsn + 1);
+        return lsn;
+    }
+
+    // Appends without waiting for the disk, whatever the mode; a later sync() covers it.
+    // A record too large to be read back is refused (IllegalArgumentException) and
+    // leaves the log as it was
+    public long appendNoSync(String... fields) {
+        if (fields.length >= LENGTH_PREFIXED) throw new IllegalArgumentException("too many fields: " + fields.length);
+        long lsn;
+        synchronized (this) {
+            try {
+                payload.reset();
+                payloadOut.writeShort(LENGTH_PREFIXED | fields.length);
+                for (String f : fields) {
+                    byte[] bytes = f.getBytes(StandardCharsets.UTF_8);
+                    payloadOut.writeInt(bytes.length);
+                    payloadOut.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // byte array streams do not fail
+            }
+            if (payload.size() > MAX_RECORD) {
+                throw new IllegalArgumentException("record of " + payload.size() + " bytes exceeds " + MAX_RECORD);
+            }
+            crc.reset();
+            crc.update(payload.bytes(), 0, payload.size());
+            writeInt(pending, payload.size());
+            writeInt(pending, (int) crc.getValue());
+            pending.write(payload.bytes(), 0, payload.size());
+            lsn = nextLsn++;
+        }
+        return lsn;
+    }
+
+    // Makes everything appended so far durable
+    public void sync() {
+        long target;
+        synchronized (this) {
+            target = nextLsn;
+        }
+        awaitDurable(target);
+    }
+
+    // Blocks until every record below lsn is on disk, fsyncing as the leader if nobody else is
+    private void awaitDurable(long lsn) {
+        synchronized (flushLock) {
+            while (durableLsn < lsn && flushing) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Interrupted waiting for log sync"));
+                }
+            }
+            if (durableLsn >= lsn) return;
+            flushing = true;
+        }
+
+        long upTo = -1;
+        try {
+            byte[] batch;
+            synchronized (this) {
+                batch = pending.toByteArray(); // copy: appends continue while we write
+                pending.reset();
+                upTo = nextLsn;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(batch);
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(false);
+        } catch (IOException e) {
+            upTo = -1;
+            throw new UncheckedIOException(e);
+        } finally {
+            synchronized (flushLock) {
+                if (upTo >= 0) {
+                    durableLsn = upTo;
+                    syncCount++;
+                }
+                flushing = false;
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    // Starts a new segment at the next LSN (after making the current one durable); returns that LSN
+    public long rotate() throws IOException {
+        sync();
+        synchronized (flushLock) {
+            while (flushing) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for log sync");
+                }
+            }
+            synchronized (this) {
+                if (pending.size() > 0) { // appended after sync() returned: keep it in the old segment
+                    ByteBuffer buf = ByteBuffer.wrap(pending.bytes(), 0, pending.size());
+                    while (buf.hasRemaining()) channel.write(buf);
+                    channel.force(false);
+                    pending.reset();
+                    durableLsn = nextLsn;
+                }
+                channel.close();
+                openSegment(nextLsn);
+                return nextLsn;
+            }
+        }
+    }
+
+    public synchronized long nextLsn() {
+        return nextLsn;
+    }
+
+    // Records in the current segment
+    public synchronized long segmentRecords() {
+        return nextLsn - segmentStart;
+    }
+
+    // Number of fsyncs issued (group commit makes this far lower than the append count)
+    public long syncCount() {
+        synchronized (flushLock) {
+            return syncCount;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (flusher != null) {
+            // join rather than interrupt: an interrupt during channel I/O closes the channel
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            sync();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void openSegment(long startLsn) throws IOException {
+        segmentStart = startLsn;
+        channel = FileChannel.open(segmentPath(dir, startLsn),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    //  Reading (recovery)
+
+    // Receives records in log order
+    interface RecordVisitor {
+        void visit(long lsn, String[] fields);
+    }
+
+    static Path segmentPath(Path dir, long startLsn) {
+        return dir.resolve(String.format("wal-%016d.log", startLsn));
+    }
+
+    // Start LSNs of the segments in dir, ascending
+    static List<Long> segments(Path dir) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "wal-*.log")) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                try {
+                    starts.add(Long.parseLong(name.substring(4, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+
+    // Visits the records of one segment; a torn tail is cut off. Returns the record count
+    static long replaySegment(Path file, long startLsn, RecordVisitor visitor) throws IOException {
+        long count = 0;
+        long size = Files.size(file);
+        long good;
+        try (RecordReader reader = new RecordReader(file)) {
+            String[] fields;
+            while ((fields = reader.next()) != null) {
+                visitor.visit(startLsn + count, fields);
+                count++;
+            }
+            good = reader.position();
+        }
+        if (good < size) {
+            System.out.println("Change log " + file.getFileName() + ": dropped " + (size - good)
+                + " bytes of incomplete records at the end.");
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(good);
+            }
+        }
+        return count;
+    }
+
+    // Sequential reader of framed records; stops at the end or at the first damaged record
+    static class RecordReader implements Closeable {
+        private final DataInputStream in;
+        private final long size;
+        private long position; // end of the last good record
+        private final CRC32 crc = new CRC32();
+
+        RecordReader(Path file) throws IOException {
+            this.size = Files.size(file);
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        }
+
+        String[] next() {
+            long remaining = size - position;
+            if (remaining < 8) return null;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 2 || length > MAX_RECORD || length > remaining - 8) return null;
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if ((int) crc.getValue() != checksum) return null;
+
+                DataInputStream fields = new DataInputStream(new ByteArrayInputStream(bytes));
+                int head = fields.readUnsignedShort();
+                boolean lengthPrefixed = (head & LENGTH_PREFIXED) != 0;
+                String[] record = new String[head & ~LENGTH_PREFIXED];
+                for (int i = 0; i < record.length; i++) {
+                    record[i] = lengthPrefixed ? readField(fields) : fields.readUTF();
+                }
+                position += 8 + length;
+                return record;
+            } catch (IOException e) {
+                return null; // damaged record
+            }
+        }
+
+        private static String readField(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) throw new EOFException("bad field length " + length);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Byte buffer whose backing array can be read without a copy
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+}
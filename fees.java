@@ -1,178 +1,293 @@
-package mine;
-
-import java.util.*;
-
-public class fees {
-
-    private static final double TOTAL_FEES = 70000;
-    private students studentModule;
-
-    //  BST Node Definition 
-    private static class FeeNode {
-        String id;
-        String name;
-        double amountPaid;
-        FeeNode left;
-        FeeNode right;
-
-        FeeNode(String id, String name, double amountPaid) {
-            this.id = id;
-            this.name = name;
-            this.amountPaid = amountPaid;
-            this.left = null;
-            this.right = null;
-        }
-    }
-
-    private FeeNode feeTreeRoot; // The root of the Binary Search Tree
-
-
-
-    public fees(students studentModule) {
-        this.studentModule = studentModule;
-        // The tree is built when a report or status check is requested.
-    }
-
-    public void run() {
-        Scanner input = new Scanner(System.in);
-        int choice = 0;
-
-        do {
-            System.out.println("\n FEES ");
-            System.out.println("1. Display Fee Status for All Students (Sorted)");
-            System.out.println("2. Generate Fee Report");
-            System.out.println("3. Back to Main Menu");
-            System.out.print("Enter choice: ");
-
-            if (!input.hasNextInt()) {
-                System.out.println("Please enter a valid number.");
-                input.nextLine();
-                continue;
-            }
-
-            choice = input.nextInt();
-            input.nextLine();
-
-            switch (choice) {
-                case 1:
-                    displayFeeStatus();
-                    break;
-                case 2:
-                    generateFeeReport();
-                    break;
-                case 3:
-                    System.out.println("Returning to Main Menu...");
-                    break;
-                default:
-                    System.out.println("Invalid choice!");
-            }
-
-        } while (choice != 3);
-    }
-
-    //  BST Helper Method: Insert
-    private FeeNode insert(FeeNode root, String id, String name, double paid) {
-        if (root == null) {
-            return new FeeNode(id, name, paid);
-        }
-
-        // We use the 'amountPaid' as the sorting key for the BST
-        if (paid < root.amountPaid) {
-            root.left = insert(root.left, id, name, paid);
-        } else {
-            // Students with the same amount paid go to the right (or could be ID based)
-            root.right = insert(root.right, id, name, paid);
-        }
-        return root;
-    }
-
-    // BST Helper Method: In-Order Traversal (Used for Display) 
-    private void inOrderDisplay(FeeNode node) {
-        if (node != null) {
-            inOrderDisplay(node.left);
-
-            String status = node.amountPaid >= TOTAL_FEES ? "Finished" : "Has Arrears (" + (TOTAL_FEES - node.amountPaid) + ")";
-            System.out.println(node.id + " | " + node.name + " | Paid: " + node.amountPaid + " | " + status);
-
-            inOrderDisplay(node.right);
-        }
-    }
-
-    // BST Helper Method: Traversal for Report Generation 
-    private void inOrderReport(FeeNode node, ReportData report) {
-        if (node != null) {
-            inOrderReport(node.left, report);
-
-            report.totalCollected += node.amountPaid;
-            if (node.amountPaid >= TOTAL_FEES) report.cleared++;
-            else report.arrears++;
-            report.totalStudents++;
-
-            inOrderReport(node.right, report);
-        }
-    }
-
-    // Helper class for report data accumulation
-    private static class ReportData {
-        double totalCollected = 0;
-        int cleared = 0;
-        int arrears = 0;
-        int totalStudents = 0;
-    }
-
-    
-    //  Public Methods (Modified to use BST) 
-
-    private void buildFeeTree() {
-        if (studentModule == null) {
-            System.out.println("Student data not linked.");
-            return;
-        }
-
-        List<Map<String, Object>> data = studentModule.getFeeData();
-        feeTreeRoot = null; // Reset the tree
-
-        if (data.isEmpty()) {
-            return;
-        }
-
-        // Populate the BST
-        for (Map<String, Object> entry : data) {
-            String id = (String) entry.get("id");
-            String name = (String) entry.get("name");
-            double paid = (double) entry.get("amountPaid");
-            feeTreeRoot = insert(feeTreeRoot, id, name, paid);
-        }
-    }
-
-    public void displayFeeStatus() {
-        buildFeeTree(); // Build the tree from scratch (to get up-to-date data)
-
-        if (feeTreeRoot == null) {
-            System.out.println("No students found.");
-            return;
-        }
-
-        System.out.println("\nStudent Fee Status, Sorted by Amount Paid:");
-        inOrderDisplay(feeTreeRoot);
-    }
-
-    public void generateFeeReport() {
-        buildFeeTree();
-
-        if (feeTreeRoot == null) {
-            System.out.println("No student data to report.");
-            return;
-        }
-
-        ReportData report = new ReportData();
-        inOrderReport(feeTreeRoot, report);
-
-        System.out.println("\nFEE REPORT");
-        System.out.println("Total Students: " + report.totalStudents);
-        System.out.println("Students Cleared: " + report.cleared);
-        System.out.println("Students with Arrears: " + report.arrears);
-        System.out.println("Total Collected: " + report.totalCollected);
-        System.out.println("Outstanding: " + ((TOTAL_FEES * report.totalStudents) - report.totalCollected));
-    }
+package mine;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+public class fees {
+
+    private static final double TOTAL_FEES = 70000;
+    private students studentModule;
+
+    //  Fee index entry
+    private static class FeeNode {
+        String id;
+        String name;
+        double amountPaid;
+
+        FeeNode(String id, String name, double amountPaid) {
+            this.id = id;
+            this.name = name;
+            this.amountPaid = amountPaid;
+        }
+    }
+
+    // Persistent balanced index (TreeSet is a red-black tree) sorted by amount paid,
+    // with the ID as tie-breaker so equal payments never collide.
+    // It lives as long as the module and is updated as students are added,
+    // removed or pay, instead of being rebuilt for every report.
+    private final TreeSet<FeeNode> feeIndex = new TreeSet<>(
+        (a, b) -> {
+            int c = Double.compare(a.amountPaid, b.amountPaid);
+            return c != 0 ? c : a.id.compareTo(b.id);
+        }
+    );
+
+    // ID -> index entry, so an update can find the entry to re-position
+    private Map<String, FeeNode> feeById = new HashMap<>();
+
+    // Running report aggregates, kept in step with the index so the
+    // report is O(1) instead of a full traversal
+    private final ReportData totals = new ReportData();
+
+    // When on, every report is cross-checked against a full recomputation
+    private boolean consistencyCheck = false;
+
+    public fees(students studentModule) {
+        this.studentModule = studentModule;
+        if (studentModule == null) return;
+
+        // Seed the index once from the registry, then follow its changes
+        reindex();
+
+        studentModule.addListener(new students.StudentListener() {
+            public void studentAdded(String id, String name, double amountPaid) {
+                addEntry(id, name, amountPaid);
+            }
+
+            public void studentRemoved(String id) {
+                removeEntry(id);
+            }
+
+            public void paymentChanged(String id, double oldAmount, double newAmount) {
+                updatePayment(id, newAmount);
+            }
+
+            public void studentsRestored() {
+                reindex();
+            }
+        });
+    }
+
+    public void run(Scanner input) {
+        int choice = 0;
+
+        do {
+            System.out.println("\n FEES ");
+            System.out.println("1. Display Fee Status for All Students (Sorted)");
+            System.out.println("2. Generate Fee Report");
+            System.out.println("3. Record Payment");
+            System.out.println("4. Back to Main Menu");
+            System.out.print("Enter choice: ");
+
+            if (!input.hasNextInt()) {
+                System.out.println("Please enter a valid number.");
+                input.nextLine();
+                continue;
+            }
+
+            choice = input.nextInt();
+            input.nextLine();
+
+            switch (choice) {
+                case 1:
+                    displayFeeStatus(Listing.Mode.browse(input));
+                    break;
+                case 2:
+                    generateFeeReport();
+                    break;
+                case 3:
+                    recordPayment(input);
+                    break;
+                case 4:
+                    System.out.println("Returning to Main Menu...");
+                    break;
+                default:
+                    System.out.println("Invalid choice!");
+            }
+
+        } while (choice != 4);
+    }
+
+    private void recordPayment(Scanner input) {
+        if (studentModule == null) {
+            System.out.println("Student data not linked.");
+            return;
+        }
+
+        System.out.print("Enter Student ID: ");
+        String id = input.nextLine().trim();
+        System.out.print("Enter Amount Paid: ");
+        if (!input.hasNextDouble()) {
+            System.out.println("Invalid amount.");
+            input.nextLine();
+            return;
+        }
+        double amount = input.nextDouble();
+        input.nextLine();
+        studentModule.recordPayment(id, amount);
+    }
+
+    // Rebuilds the index and totals from the registry. Entries are sorted first and
+    // then inserted in order: each insert walks the tree's right spine, whose nodes stay
+    // in cache, instead of a random path
+    private void reindex() {
+        feeIndex.clear();
+        totals.totalCollected = BigDecimal.ZERO;
+        totals.cleared = 0;
+        totals.arrears = 0;
+        totals.totalStudents = 0;
+
+        int size = studentModule.size();
+        feeById = new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+        FeeNode[] nodes = new FeeNode[size];
+        int n = 0;
+        students.StudentCursor cur = studentModule.cursor();
+        while (cur.next()) {
+            FeeNode node = new FeeNode(cur.id(), cur.name(), cur.amountPaid());
+            nodes[n++] = node;
+            feeById.put(node.id, node);
+            count(node.amountPaid, 1);
+        }
+        Arrays.sort(nodes, 0, n, feeIndex.comparator());
+        for (int i = 0; i < n; i++) feeIndex.add(nodes[i]);
+    }
+
+    //  Index maintenance (O(log n) each)
+    private void addEntry(String id, String name, double paid) {
+        FeeNode node = new FeeNode(id, name, paid);
+        feeById.put(id, node);
+        feeIndex.add(node);
+        count(paid, 1);
+    }
+
+    private void removeEntry(String id) {
+        FeeNode node = feeById.remove(id);
+        if (node == null) return;
+        feeIndex.remove(node);
+        count(node.amountPaid, -1);
+    }
+
+    private void updatePayment(String id, double newAmount) {
+        FeeNode node = feeById.get(id);
+        if (node == null) return;
+        // The key changes, so take the entry out before updating it
+        feeIndex.remove(node);
+        count(node.amountPaid, -1);
+        node.amountPaid = newAmount;
+        feeIndex.add(node);
+        count(newAmount, 1);
+    }
+
+    // Adds (sign = 1) or removes (sign = -1) one student's payment from the aggregates.
+    // The sum is kept exact (BigDecimal of the exact double), so taking a payment out
+    // undoes adding it and the total never drifts
+    private void count(double paid, int sign) {
+        BigDecimal amount = new BigDecimal(paid);
+        totals.totalCollected = sign > 0 ? totals.totalCollected.add(amount) : totals.totalCollected.subtract(amount);
+        if (paid >= TOTAL_FEES) totals.cleared += sign;
+        else totals.arrears += sign;
+        totals.totalStudents += sign;
+    }
+
+    // In-order walk of the index (iterative, no recursion depth limit)
+    private Listing.Rows inOrderRows() {
+        return new Listing.Rows() {
+            private final long size = feeIndex.size();
+            private final Iterator<FeeNode> nodes = feeIndex.iterator();
+            private FeeNode node;
+
+            public long size() {
+                return size;
+            }
+
+            public boolean next() {
+                if (!nodes.hasNext()) return false;
+                node = nodes.next();
+                return true;
+            }
+
+            public void format(Listing out) {
+                out.text(node.id).text(" | ").text(node.name).text(" | Paid: ").number(node.amountPaid).text(" | ");
+                if (node.amountPaid >= TOTAL_FEES) out.text("Finished");
+                else out.text("Has Arrears (").number(TOTAL_FEES - node.amountPaid).text(')');
+            }
+        };
+    }
+
+    // Full traversal, used only to verify the running aggregates
+    private void inOrderReport(ReportData report) {
+        for (FeeNode node : feeIndex) {
+            report.totalCollected = report.totalCollected.add(new BigDecimal(node.amountPaid));
+            if (node.amountPaid >= TOTAL_FEES) report.cleared++;
+            else report.arrears++;
+            report.totalStudents++;
+        }
+    }
+
+    // Helper class for report data accumulation
+    private static class ReportData {
+        BigDecimal totalCollected = BigDecimal.ZERO;
+        int cleared = 0;
+        int arrears = 0;
+        int totalStudents = 0;
+    }
+
+    //  Public Methods
+
+    public void setConsistencyCheck(boolean enabled) {
+        this.consistencyCheck = enabled;
+    }
+
+    // Recomputes the report from the index and compares it with the running totals
+    public boolean checkConsistency() {
+        ReportData fresh = new ReportData();
+        inOrderReport(fresh);
+
+        boolean ok = fresh.totalStudents == totals.totalStudents
+            && fresh.cleared == totals.cleared
+            && fresh.arrears == totals.arrears
+            && fresh.totalCollected.compareTo(totals.totalCollected) == 0;
+
+        if (!ok) {
+            System.out.println("Fee totals out of sync! Running: " + totals.totalStudents + "/" + totals.cleared + "/"
+                + totals.arrears + "/" + totals.totalCollected + " Recomputed: " + fresh.totalStudents + "/"
+                + fresh.cleared + "/" + fresh.arrears + "/" + fresh.totalCollected);
+        }
+        return ok;
+    }
+
+    public void displayFeeStatus() {
+        displayFeeStatus(Listing.Mode.ALL);
+    }
+
+    // False only if an export failed
+    boolean displayFeeStatus(Listing.Mode mode) {
+        if (feeIndex.isEmpty()) {
+            System.out.println("No students found.");
+            return Listing.nothing(mode);
+        }
+
+        System.out.println("\nStudent Fee Status, Sorted by Amount Paid:");
+        return Listing.show(this::inOrderRows, mode);
+    }
+
+    public void generateFeeReport() {
+        if (feeIndex.isEmpty()) {
+            System.out.println("No student data to report.");
+            return;
+        }
+
+        if (consistencyCheck) checkConsistency();
+
+        ReportData report = totals; // O(1): maintained incrementally
+
+        System.out.println("\nFEE REPORT");
+        System.out.println("Total Students: " + report.totalStudents);
+        System.out.println("Students Cleared: " + report.cleared);
+        System.out.println("Students with Arrears: " + report.arrears);
+        // Rounded to a double only for display, once
+        BigDecimal due = new BigDecimal(TOTAL_FEES).multiply(BigDecimal.valueOf(report.totalStudents));
+        System.out.println("Total Collected: " + report.totalCollected.doubleValue());
+        System.out.println("Outstanding: " + due.subtract(report.totalCollected).doubleValue());
+    }
 }
\ No newline at end of file
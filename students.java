@@ -1,179 +1,504 @@
-package mine;
-
-import java.util.*;
-
-public class students {
-
-    private static class Node {
-        String id;
-        String name;
-        double amountPaid;
-        Node next;
-
-        Node(String id, String name, double amountPaid) {
-            this.id = id;
-            this.name = name;
-            this.amountPaid = amountPaid;
-            this.next = null;
-        }
-    }
-
-    private Node head;
-
-    public void run() {
-        Scanner input = new Scanner(System.in);
-        int choice = 0;
-        do {
-            System.out.println("\nSTUDENT MANAGEMENT");
-            System.out.println("1. Add Student");
-            System.out.println("2. Search Student by ID");
-            System.out.println("3. Delete Student by ID");
-            System.out.println("4. Display All Students");
-            System.out.println("5. Back to Main Menu");
-            System.out.print("Enter choice: ");
-
-            if (!input.hasNextInt()) {
-                System.out.println("Please enter valid  number.");
-                input.nextLine();
-                continue;
-            }
-
-            choice = input.nextInt();
-            input.nextLine();
-
-            switch (choice) {
-                case 1:
-                    System.out.print("Enter Student ID: ");
-                    String id = input.nextLine().trim();
-                    System.out.print("Enter Name: ");
-                    String name = input.nextLine().trim();
-                    System.out.print("Enter Amount Paid: ");
-                    double amount = 0;
-                    if (input.hasNextDouble()) {
-                        amount = input.nextDouble();
-                        input.nextLine();
-                    } else {
-                        System.out.println("Invalid amount.");//we default to 0
-                        input.nextLine();
-                    }
-                    addStudent(id, name, amount);
-                    break;
-                case 2:
-                    System.out.print("Enter Student ID to search: ");
-                    searchStudent(input.nextLine().trim());
-                    break;
-                case 3:
-                    System.out.print("Enter Student ID to delete: ");
-                    deleteStudent(input.nextLine().trim());
-                    break;
-                case 4:
-                    displayAllStudents();
-                    break;
-                case 5:
-                    System.out.println("Returning to Main Menu...");
-                    break;
-                default:
-                    System.out.println("Invalid choice. Try again.");
-            }
-
-        } while (choice != 5);
-    }
-
-    public void addStudent(String id, String name, double amount) {
-        if (id == null || id.isEmpty()) {
-            System.out.println("Invalid ID. Student not added.");
-            return;
-        }
-
-        Node newNode = new Node(id, name, amount);
-        if (head == null) {
-            head = newNode;
-        } else {
-            Node cur = head;
-            while (cur.next != null) cur = cur.next;
-            cur.next = newNode;
-        }
-        System.out.println("Student added: " + id + " | " + name + " | Paid: " + amount);
-    }
-
-    public void searchStudent(String id) {
-        Node cur = head;
-        while (cur != null) {
-            if (cur.id.equals(id)) {
-                System.out.println("Found -> ID: " + cur.id + " | Name: " + cur.name + " | Paid: " + cur.amountPaid);
-                return;
-            }
-            cur = cur.next;
-        }
-        System.out.println("Student with ID " + id + " not found.");
-    }
-
-    public void deleteStudent(String id) {
-        if (head == null) {
-            System.out.println("No students to delete.");
-            return;
-        }
-
-        if (head.id.equals(id)) {
-            head = head.next;
-            System.out.println("Student " + id + " deleted.");
-            return;
-        }
-
-        Node cur = head;
-        while (cur.next != null && !cur.next.id.equals(id)) {
-            cur = cur.next;
-        }
-
-        if (cur.next == null) {
-            System.out.println("Student with ID " + id + " not found.");
-        } else {
-            cur.next = cur.next.next;
-            System.out.println("Student " + id + " deleted.");
-        }
-    }
-
-    public void displayAllStudents() {
-        if (head == null) {
-            System.out.println(" No student data available.");
-            return;
-        }
-
-        System.out.println("\nRegistered Students:");
-        Node cur = head;
-        int idx = 1;
-        while (cur != null) {
-            System.out.println(idx + ". ID: " + cur.id + " | Name: " + cur.name + " | Paid: " + cur.amountPaid);
-            idx++;
-            cur = cur.next;
-        }
-    }
-
-    // === This gives fee info to Fee module ===
-    public List<Map<String, Object>> getFeeData() {
-        List<Map<String, Object>> data = new ArrayList<>();
-        Node cur = head;
-        while (cur != null) {
-            Map<String, Object> entry = new HashMap<>();
-            entry.put("id", cur.id);
-            entry.put("name", cur.name);
-            entry.put("amountPaid", cur.amountPaid);
-            data.add(entry);
-            cur = cur.next;
-        }
-        return data;
-    }
-
-    public List<String> getAllStudentIDs() {
-        List<String> ids = new ArrayList<>();
-        Node cur = head;
-        
-        // Traverse the Linked List from the head (O(N) time)
-        while (cur != null) {
-            ids.add(cur.id);
-            cur = cur.next;
-        }
-        
-        return ids;
-    }
-}
+package mine;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.*;
+
+public class students {
+
+    private static class Node {
+        String id;
+        String name;
+        double amountPaid;
+        Node prev;
+        Node next;
+
+        Node(String id, String name, double amountPaid) {
+            this.id = id;
+            this.name = name;
+            this.amountPaid = amountPaid;
+            this.prev = null;
+            this.next = null;
+        }
+    }
+
+    // Doubly linked list keeps registration order; tail makes appends O(1)
+    private Node head;
+    private Node tail;
+
+    // Hash index on student ID -> list node for O(1) search and delete
+    private Map<String, Node> index = new HashMap<>();
+
+    // Modules that keep derived data (fee index, course seats, marks, loans) up to date
+    private final List<StudentListener> listeners = new ArrayList<>();
+
+    // Events held back while a batch is open (null = deliver immediately)
+    private List<StudentEvent> pendingEvents;
+
+    // Change events from the registry. Callbacks run on the caller's thread,
+    // either straight away or when a batch is closed; override only what you need.
+    public interface StudentListener {
+        default void studentAdded(String id, String name, double amountPaid) {}
+
+        default void studentRemoved(String id) {}
+
+        default void paymentChanged(String id, double oldAmount, double newAmount) {}
+
+        // Many students were loaded at once without per-student events (snapshot
+        // restore); read them through cursor()
+        default void studentsRestored() {}
+
+        // A closed batch is being delivered: its events come between these two calls,
+        // so a listener can group its own work (e.g. one log sync per batch)
+        default void batchStarted() {}
+
+        default void batchEnded() {}
+    }
+
+    public void addListener(StudentListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StudentListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Queued change, only allocated while batching
+    private static class StudentEvent {
+        static final int ADDED = 0, REMOVED = 1, PAYMENT = 2;
+
+        int type;
+        String id;
+        String name;
+        double oldAmount;
+        double newAmount;
+
+        StudentEvent(int type, String id, String name, double oldAmount, double newAmount) {
+            this.type = type;
+            this.id = id;
+            this.name = name;
+            this.oldAmount = oldAmount;
+            this.newAmount = newAmount;
+        }
+    }
+
+    // Starts collecting events instead of delivering each one; use for bulk changes
+    public void beginBatch() {
+        if (pendingEvents == null) pendingEvents = new ArrayList<>();
+    }
+
+    // Delivers the collected events in order and returns to immediate delivery
+    public void endBatch() {
+        List<StudentEvent> events = pendingEvents;
+        pendingEvents = null;
+        if (events == null) return;
+        for (StudentListener l : listeners) l.batchStarted();
+        try {
+            for (StudentEvent e : events) {
+                switch (e.type) {
+                    case StudentEvent.ADDED:
+                        fireAdded(e.id, e.name, e.newAmount);
+                        break;
+                    case StudentEvent.REMOVED:
+                        fireRemoved(e.id);
+                        break;
+                    default:
+                        firePayment(e.id, e.oldAmount, e.newAmount);
+                }
+            }
+        } finally {
+            for (StudentListener l : listeners) l.batchEnded();
+        }
+    }
+
+    private void fireAdded(String id, String name, double amount) {
+        if (pendingEvents != null) {
+            pendingEvents.add(new StudentEvent(StudentEvent.ADDED, id, name, 0, amount));
+            return;
+        }
+        for (StudentListener l : listeners) l.studentAdded(id, name, amount);
+    }
+
+    private void fireRemoved(String id) {
+        if (pendingEvents != null) {
+            pendingEvents.add(new StudentEvent(StudentEvent.REMOVED, id, null, 0, 0));
+            return;
+        }
+        for (StudentListener l : listeners) l.studentRemoved(id);
+    }
+
+    private void firePayment(String id, double oldAmount, double newAmount) {
+        if (pendingEvents != null) {
+            pendingEvents.add(new StudentEvent(StudentEvent.PAYMENT, id, null, oldAmount, newAmount));
+            return;
+        }
+        for (StudentListener l : listeners) l.paymentChanged(id, oldAmount, newAmount);
+    }
+
+    public void run(Scanner input) {
+        int choice = 0;
+        do {
+            System.out.println("\nSTUDENT MANAGEMENT");
+            System.out.println("1. Add Student");
+            System.out.println("2. Search Student by ID");
+            System.out.println("3. Delete Student by ID");
+            System.out.println("4. Display All Students");
+            System.out.println("5. Import Students from CSV");
+            System.out.println("6. Back to Main Menu");
+            System.out.print("Enter choice: ");
+
+            if (!input.hasNextInt()) {
+                System.out.println("Please enter valid  number.");
+                input.nextLine();
+                continue;
+            }
+
+            choice = input.nextInt();
+            input.nextLine();
+
+            switch (choice) {
+                case 1:
+                    System.out.print("Enter Student ID: ");
+                    String id = input.nextLine().trim();
+                    System.out.print("Enter Name: ");
+                    String name = input.nextLine().trim();
+                    System.out.print("Enter Amount Paid: ");
+                    double amount = 0;
+                    if (input.hasNextDouble()) {
+                        amount = input.nextDouble();
+                        input.nextLine();
+                    } else {
+                        System.out.println("Invalid amount.");//we default to 0
+                        input.nextLine();
+                    }
+                    addStudent(id, name, amount);
+                    break;
+                case 2:
+                    System.out.print("Enter Student ID to search: ");
+                    searchStudent(input.nextLine().trim());
+                    break;
+                case 3:
+                    System.out.print("Enter Student ID to delete: ");
+                    deleteStudent(input.nextLine().trim());
+                    break;
+                case 4:
+                    displayStudents(Listing.Mode.browse(input));
+                    break;
+                case 5:
+                    System.out.print("Enter CSV file (id,name,amountPaid): ");
+                    String file = input.nextLine().trim();
+                    System.out.print("File for rejected rows (blank for none): ");
+                    String rejects = input.nextLine().trim();
+                    importStudents(file, rejects.isEmpty() ? null : rejects);
+                    break;
+                case 6:
+                    System.out.println("Returning to Main Menu...");
+                    break;
+                default:
+                    System.out.println("Invalid choice. Try again.");
+            }
+
+        } while (choice != 6);
+    }
+
+    // Bulk import through the streaming pipeline (see StudentImport); prints a summary
+    public boolean importStudents(String file, String rejectFile) {
+        try {
+            StudentImport.Result r = StudentImport.run(this, Paths.get(file), rejectFile == null ? null : Paths.get(rejectFile));
+            System.out.println(String.format("Imported %,d of %,d rows in %,d ms (%,.0f rows/s): %,d duplicates, %,d invalid.",
+                r.imported, r.rows, r.millis, r.rowsPerSecond(), r.duplicates, r.invalid));
+            for (String example : r.examples) System.out.println("  " + example);
+            if (r.duplicates + r.invalid > r.examples.size()) {
+                System.out.println("  ..." + (rejectFile == null ? "" : " all rejected rows are in " + rejectFile));
+            }
+            return true;
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Import failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean addStudent(String id, String name, double amount) {
+        if (id == null || id.isEmpty()) {
+            System.out.println("Invalid ID. Student not added.");
+            return false;
+        }
+
+        if (index.containsKey(id)) {
+            System.out.println("Student with ID " + id + " already exists. Student not added.");
+            return false;
+        }
+
+        if (!validAmount(amount)) {
+            System.out.println("Invalid amount " + amount + ". Student not added.");
+            return false;
+        }
+
+        link(new Node(id, name, amount));
+        fireAdded(id, name, amount);
+        System.out.println("Student added: " + id + " | " + name + " | Paid: " + amount);
+        return true;
+    }
+
+    // Quiet add for bulk imports; false when the ID is already registered
+    boolean importStudent(String id, String name, double amount) {
+        if (index.containsKey(id)) return false;
+        link(new Node(id, name, amount));
+        fireAdded(id, name, amount);
+        return true;
+    }
+
+    // Appends a node at the tail and indexes it
+    private void link(Node newNode) {
+        if (tail == null) {
+            head = newNode;
+        } else {
+            tail.next = newNode;
+            newNode.prev = tail;
+        }
+        tail = newNode;
+        index.put(newNode.id, newNode);
+    }
+
+    public void searchStudent(String id) {
+        Node cur = index.get(id);
+        if (cur != null) {
+            System.out.println("Found -> ID: " + cur.id + " | Name: " + cur.name + " | Paid: " + cur.amountPaid);
+            return;
+        }
+        System.out.println("Student with ID " + id + " not found.");
+    }
+
+    public boolean deleteStudent(String id) {
+        if (head == null) {
+            System.out.println("No students to delete.");
+            return false;
+        }
+
+        Node cur = index.remove(id);
+        if (cur == null) {
+            System.out.println("Student with ID " + id + " not found.");
+            return false;
+        }
+
+        unlink(cur);
+        fireRemoved(id);
+        System.out.println("Student " + id + " deleted.");
+        return true;
+    }
+
+    // Unlinks the node using its neighbours (O(1), no scan)
+    private void unlink(Node cur) {
+        if (cur.prev == null) head = cur.next;
+        else cur.prev.next = cur.next;
+        if (cur.next == null) tail = cur.prev;
+        else cur.next.prev = cur.prev;
+        cur.prev = null;
+        cur.next = null;
+    }
+
+    // Adds a payment to a student's total; returns false if the ID is unknown
+    public boolean recordPayment(String id, double amount) {
+        if (!validAmount(amount)) {
+            System.out.println("Invalid amount " + amount + ". Payment not recorded.");
+            return false;
+        }
+
+        Node cur = index.get(id);
+        if (cur == null) {
+            System.out.println("Student with ID " + id + " not found.");
+            return false;
+        }
+
+        double old = cur.amountPaid;
+        cur.amountPaid = old + amount;
+        firePayment(id, old, cur.amountPaid);
+        System.out.println("Payment recorded for " + id + ". Total paid: " + cur.amountPaid);
+        return true;
+    }
+
+    //  Persistence (records: student add <id> <name> <paid> | remove <id> | paid <id> <total>)
+
+    // Applies a logged change quietly; listeners still fire so derived data follows
+    void replay(String[] record) {
+        String id = record[2];
+        Node cur = index.get(id);
+        switch (record[1]) {
+            case "add":
+                double amount = Double.parseDouble(record[4]);
+                if (cur == null) {
+                    link(new Node(id, record[3], amount));
+                    fireAdded(id, record[3], amount);
+                } else {
+                    cur.name = record[3];
+                    setPaid(cur, amount);
+                }
+                break;
+            case "remove":
+                if (cur == null) return;
+                index.remove(id);
+                unlink(cur);
+                fireRemoved(id);
+                break;
+            case "paid":
+                if (cur != null) setPaid(cur, Double.parseDouble(record[3]));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown operation " + record[1]);
+        }
+    }
+
+    private void setPaid(Node cur, double amount) {
+        double old = cur.amountPaid;
+        if (old == amount) return;
+        cur.amountPaid = amount;
+        firePayment(cur.id, old, amount);
+    }
+
+    // Writes every student, in registration order
+    void snapshot(SnapshotFile.Writer out) {
+        for (Node cur = head; cur != null; cur = cur.next) {
+            out.student(cur.id, cur.name, cur.amountPaid);
+        }
+    }
+
+    // Bulk load into an empty registry: builds the list and a presized index directly,
+    // then notifies listeners once (studentsRestored) instead of once per student
+    void restore(String[] ids, String[] names, double[] amountsPaid, int count) {
+        if (head != null) throw new IllegalStateException("registry is not empty");
+        index = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+        for (int i = 0; i < count; i++) {
+            Node node = new Node(ids[i], names[i], amountsPaid[i]);
+            if (index.putIfAbsent(node.id, node) != null) continue; // duplicate ID: first one wins
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+                node.prev = tail;
+            }
+            tail = node;
+        }
+        for (StudentListener l : listeners) l.studentsRestored();
+    }
+
+    // Amounts feed the fee totals, so NaN, infinities and negatives never get in
+    // (same rule as StudentImport's validator)
+    private static boolean validAmount(double amount) {
+        return Double.isFinite(amount) && amount >= 0;
+    }
+
+    // Membership check shared by Library and Performance (O(1) via the ID index)
+    public boolean isRegistered(String id) {
+        return id != null && index.containsKey(id);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public void displayAllStudents() {
+        displayStudents(Listing.Mode.ALL);
+    }
+
+    // Registration order; false only if an export failed
+    boolean displayStudents(Listing.Mode mode) {
+        if (head == null) {
+            System.out.println(" No student data available.");
+            return Listing.nothing(mode);
+        }
+
+        System.out.println("\nRegistered Students:");
+        return Listing.show(this::studentRows, mode);
+    }
+
+    private Listing.Rows studentRows() {
+        return new Listing.Rows() {
+            private final long size = index.size();
+            private Node nextNode = head;
+            private Node cur;
+            private long idx;
+
+            public long size() {
+                return size;
+            }
+
+            public boolean next() {
+                cur = nextNode;
+                if (cur == null) return false;
+                nextNode = cur.next;
+                idx++;
+                return true;
+            }
+
+            public void format(Listing out) {
+                out.number(idx).text(". ID: ").text(cur.id).text(" | Name: ").text(cur.name)
+                    .text(" | Paid: ").number(cur.amountPaid);
+            }
+        };
+    }
+
+    // === Read-only cursor over the registry, in registration order ===
+    // One cursor per pass; it reuses itself for every student, so iterating
+    // allocates nothing per student and amountPaid stays a primitive.
+    public StudentCursor cursor() {
+        return new StudentCursor(head);
+    }
+
+    public static final class StudentCursor {
+        private Node nextNode;
+        private Node current;
+
+        private StudentCursor(Node head) {
+            this.nextNode = head;
+        }
+
+        // Moves to the next student; false when the registry is exhausted
+        public boolean next() {
+            current = nextNode;
+            if (current == null) return false;
+            nextNode = current.next;
+            return true;
+        }
+
+        public String id() {
+            return current.id;
+        }
+
+        public String name() {
+            return current.name;
+        }
+
+        public double amountPaid() {
+            return current.amountPaid;
+        }
+    }
+
+    // === This gives fee info to Fee module ===
+    // Compatibility shim: prefer cursor(), which does not build a map per student.
+    public List<Map<String, Object>> getFeeData() {
+        List<Map<String, Object>> data = new ArrayList<>(index.size());
+        StudentCursor cur = cursor();
+        while (cur.next()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("id", cur.id());
+            entry.put("name", cur.name());
+            entry.put("amountPaid", cur.amountPaid());
+            data.add(entry);
+        }
+        return data;
+    }
+
+    public List<String> getAllStudentIDs() {
+        List<String> ids = new ArrayList<>(index.size());
+        Node cur = head;
+        
+        // Traverse the Linked List from the head (O(N) time, registration order)
+        while (cur != null) {
+            ids.add(cur.id);
+            cur = cur.next;
+        }
+        
+        return ids;
+    }
+}